@@ -0,0 +1,66 @@
+package de.coerdevelopment.essentials.benchmark;
+
+import de.coerdevelopment.essentials.repository.SQL;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the batch insert at different batch sizes and the batch update, every invocation writes {@link #ROWS} rows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchWriteBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final String INSERT_TABLE = BenchmarkDatabase.ENTRY_TABLE + "_inserts";
+
+    @Param({"1", "50", "200", "1000"})
+    public int batchSize;
+
+    private SQL sql;
+    private List<BenchmarkDatabase.Entry> entries;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        sql = BenchmarkDatabase.connect();
+        BenchmarkDatabase.createEntryTable(sql);
+        entries = BenchmarkDatabase.createEntries(ROWS);
+        // the update benchmark needs existing rows with the ids of the entries
+        sql.batchInsert(BenchmarkDatabase.ENTRY_TABLE, entries, BenchmarkDatabase.ENTRY_MAPPER, ROWS);
+        sql.executeQuery("DROP TABLE IF EXISTS " + INSERT_TABLE);
+        sql.executeQuery("CREATE TABLE " + INSERT_TABLE + " AS SELECT * FROM " + BenchmarkDatabase.ENTRY_TABLE + " WITH NO DATA");
+    }
+
+    /**
+     * Empties the insert table, so every insert writes into a table of the same size.
+     * An invocation takes milliseconds, which keeps the overhead of the per invocation setup negligible.
+     */
+    @Setup(Level.Invocation)
+    public void truncate() {
+        sql.executeQuery("TRUNCATE TABLE " + INSERT_TABLE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        sql.disconnect();
+    }
+
+    @Benchmark
+    public void batchInsert() throws SQLException {
+        sql.batchInsert(INSERT_TABLE, entries, BenchmarkDatabase.ENTRY_MAPPER, batchSize);
+    }
+
+    @Benchmark
+    public void batchUpdate() throws SQLException {
+        sql.batchUpdate(BenchmarkDatabase.ENTRY_TABLE, entries, batchSize, BenchmarkDatabase.ENTRY_MAPPER,
+                "counter = ?, description = ?", "entry_id = ?");
+    }
+
+}
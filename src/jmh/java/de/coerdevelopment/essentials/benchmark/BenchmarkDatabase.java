@@ -0,0 +1,87 @@
+package de.coerdevelopment.essentials.benchmark;
+
+import de.coerdevelopment.essentials.repository.ColumnMapper;
+import de.coerdevelopment.essentials.repository.SQL;
+import de.coerdevelopment.essentials.repository.SQLTable;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedded in-memory database and test data shared by the benchmarks
+ */
+public class BenchmarkDatabase {
+
+    public static final String ENTRY_TABLE = "bench_entries";
+
+    public static SQL connect() {
+        SQL sql = SQL.newSQL("mem", "sa", "", "coer_benchmark", 0, "h2", 1, 4);
+        // slow query logging would measure the logger
+        sql.setSlowQueryThresholdMillis(0);
+        if (!sql.initSQL()) {
+            throw new IllegalStateException("Unable to start the embedded database");
+        }
+        return sql;
+    }
+
+    public static void createEntryTable(SQL sql) {
+        SQLTable table = new SQLTable(ENTRY_TABLE);
+        table.addAutoKey("entry_id");
+        table.addString("name", 64, false);
+        table.addInteger("counter", false);
+        table.addString("description", 256, true);
+        table.addDateTimeWithTimezone("created_at", false);
+        sql.executeQuery("DROP TABLE IF EXISTS " + ENTRY_TABLE);
+        sql.executeQuery(table.getCreateTableStatement());
+    }
+
+    public static List<Entry> createEntries(int amount) {
+        List<Entry> entries = new ArrayList<>(amount);
+        OffsetDateTime now = OffsetDateTime.now();
+        for (int i = 0; i < amount; i++) {
+            entries.add(new Entry(i + 1, "entry-" + i, i, "Description of the benchmark entry " + i, now));
+        }
+        return entries;
+    }
+
+    public static class Entry {
+        public long entryId;
+        public String name;
+        public int counter;
+        public String description;
+        public OffsetDateTime createdAt;
+
+        public Entry(long entryId, String name, int counter, String description, OffsetDateTime createdAt) {
+            this.entryId = entryId;
+            this.name = name;
+            this.counter = counter;
+            this.description = description;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public static final ColumnMapper<Entry> ENTRY_MAPPER = new ColumnMapper<>() {
+        @Override
+        public Map<String, Object> mapColumns(Entry entry) {
+            Map<String, Object> columns = new HashMap<>();
+            columns.put("entry_id", entry.entryId);
+            columns.put("name", entry.name);
+            columns.put("counter", entry.counter);
+            columns.put("description", entry.description);
+            columns.put("created_at", entry.createdAt);
+            return columns;
+        }
+
+        @Override
+        public Entry getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
+            return new Entry(resultSet.getLong("entry_id"), resultSet.getString("name"), resultSet.getInt("counter"),
+                    resultSet.getString("description"), resultSet.getObject("created_at", OffsetDateTime.class));
+        }
+    };
+
+}
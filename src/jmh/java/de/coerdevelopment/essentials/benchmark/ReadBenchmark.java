@@ -0,0 +1,80 @@
+package de.coerdevelopment.essentials.benchmark;
+
+import de.coerdevelopment.essentials.api.Account;
+import de.coerdevelopment.essentials.repository.AccountRepository;
+import de.coerdevelopment.essentials.repository.SQL;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the row mapping of the read paths: generic field maps, the account column mapper and the streaming cursor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final String ACCOUNT_TABLE = "bench_accounts";
+
+    private SQL sql;
+    private AccountRepository accountRepository;
+    private long accountId;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        sql = BenchmarkDatabase.connect();
+        BenchmarkDatabase.createEntryTable(sql);
+        sql.batchInsert(BenchmarkDatabase.ENTRY_TABLE, BenchmarkDatabase.createEntries(ROWS), BenchmarkDatabase.ENTRY_MAPPER, ROWS);
+
+        sql.executeQuery("DROP TABLE IF EXISTS " + ACCOUNT_TABLE);
+        accountRepository = new AccountRepository(ACCOUNT_TABLE);
+        accountRepository.createTable();
+        for (int i = 0; i < ROWS; i++) {
+            Account account = accountRepository.createAccount("user" + i + "@example.com", "hash", "salt", Locale.GERMANY,
+                    "user" + i, "First" + i, "Last" + i);
+            accountId = account.accountId;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        sql.disconnect();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> queryReturningFields() {
+        return sql.executeQueryReturningFields("SELECT * FROM " + BenchmarkDatabase.ENTRY_TABLE);
+    }
+
+    @Benchmark
+    public Account getAccount() {
+        return accountRepository.getAccount(accountId);
+    }
+
+    @Benchmark
+    public void streamAccounts(Blackhole blackhole) {
+        try (Stream<Account> accounts = accountRepository.streamAllAccounts(SQL.DEFAULT_FETCH_SIZE)) {
+            accounts.forEach(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public void streamEntries(Blackhole blackhole) {
+        try (Stream<BenchmarkDatabase.Entry> entries = sql.streamQuery("SELECT * FROM " + BenchmarkDatabase.ENTRY_TABLE,
+                BenchmarkDatabase.ENTRY_MAPPER, SQL.DEFAULT_FETCH_SIZE)) {
+            entries.forEach(blackhole::consume);
+        }
+    }
+
+}
@@ -68,6 +68,13 @@ public class Account {
         calcAge();
     }
 
+    /**
+     * Returns a copy of this account, cached instances are shared and have to be copied before they are modified
+     */
+    public Account copy() {
+        return new Account(accountId, email, createdAt, birthday, firstName, lastName, username, phoneNumber, nationality, location, locale, preferredCurrency, instagramUrl, twitterUrl, facebookUrl, linkedinUrl, websiteUrl, aboutMe, profilePictureUrl, isPrivate, isLocked, mailVerified);
+    }
+
     private void calcAge() {
         if (birthday != null) {
             age = Period.between(birthday, LocalDate.now()).getYears();
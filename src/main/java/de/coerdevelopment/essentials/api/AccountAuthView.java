@@ -0,0 +1,30 @@
+package de.coerdevelopment.essentials.api;
+
+/**
+ * Projection of an account with the fields needed for authentication and mail verification
+ */
+public class AccountAuthView {
+
+    public long accountId;
+    public String email;
+    public String username;
+    public boolean isLocked;
+    public boolean mailVerified;
+    public long emailVerificationCodeExpiration;
+
+    public AccountAuthView(long accountId, String email, String username, boolean isLocked, boolean mailVerified, long emailVerificationCodeExpiration) {
+        this.accountId = accountId;
+        this.email = email;
+        this.username = username;
+        this.isLocked = isLocked;
+        this.mailVerified = mailVerified;
+        this.emailVerificationCodeExpiration = emailVerificationCodeExpiration;
+    }
+
+    /**
+     * Returns true if the mail is not verified yet and a sent verification code has not expired
+     */
+    public boolean isEmailVerificationPending() {
+        return !mailVerified && emailVerificationCodeExpiration > System.currentTimeMillis();
+    }
+}
@@ -28,6 +28,23 @@ public class JobExecutionRepository extends Repository {
 
     @Override
     public void createTable() {
+        SQLTable table = getTable();
+        sql.executeQuery(table.getCreateTableStatement());
+        // add index
+        sql.executeQuery(table.getCreateIndexStatement("idx_job_log_execution_uuid", "execution_uuid"));
+        sql.executeQuery(table.getCreateIndexStatement("idx_job_log_name", "name"));
+    }
+
+    @Override
+    public List<Migration> getMigrations() {
+        SQLTable table = getTable();
+        return List.of(new Migration(1, "Create job executions")
+                .createTable(table)
+                .execute(table.getCreateIndexStatement("idx_job_log_execution_uuid", "execution_uuid"))
+                .execute(table.getCreateIndexStatement("idx_job_log_name", "name")));
+    }
+
+    private SQLTable getTable() {
         SQLTable table = new SQLTable(tableName);
         table.addAutoKey("job_id");
         table.addString("execution_uuid", 120, false);
@@ -42,11 +59,8 @@ public class JobExecutionRepository extends Repository {
         table.addDateTimeWithTimezone("ended_at", true);
         table.addLong("duration", false);
         table.addDateTimeWithTimezone("logged_at", false);
-        sql.executeQuery(table.getCreateTableStatement());
-        // add index
-        sql.executeQuery("CREATE INDEX IF NOT EXISTS idx_job_log_execution_uuid ON " + tableName + " (execution_uuid);");
-        sql.executeQuery("CREATE INDEX IF NOT EXISTS idx_job_log_name ON " + tableName + " (name);");
-
+        applyPartitioning(table, "started_at");
+        return table;
     }
 
     public void insertLogs(List<JobExecution> executions) throws SQLException {
@@ -58,7 +72,7 @@ public class JobExecutionRepository extends Repository {
         public Map<String, Object> mapColumns(JobExecution obj) {
             return Map.of("execution_uuid", obj.uuid.toString(),
                           "name", obj.job.getName(),
-                          "options", SQLUtil.getJsonPgObject(gson.toJson(obj.options)),
+                          "options", SQLUtil.getJsonObject(gson.toJson(obj.options)),
                           "data", obj.data,
                           "stacktrace", obj.stackTrace,
                           "started_at", obj.startetAt,
@@ -5,6 +5,7 @@ import de.coerdevelopment.essentials.api.AccountLogin;
 import de.coerdevelopment.essentials.job.Job;
 import de.coerdevelopment.essentials.job.JobExecution;
 import de.coerdevelopment.essentials.job.JobOptions;
+import de.coerdevelopment.essentials.repository.BulkLoadResult;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
@@ -29,9 +30,10 @@ public class AccountLoginHistoryJob extends Job {
         int recordsInserted = 0;
         if (!loginsToBeProcessed.isEmpty()) {
             List<AccountLogin> currentLoginsToBeProcessed = new ArrayList<>(loginsToBeProcessed);
-            CoerEssentials.getInstance().getAccountModule().accountLoginRepository.insertLogins(currentLoginsToBeProcessed);
+            BulkLoadResult result = CoerEssentials.getInstance().getAccountModule().accountLoginRepository.insertLogins(currentLoginsToBeProcessed);
             recordsInserted = loginsToBeProcessed.size();
             loginsToBeProcessed.removeAll(currentLoginsToBeProcessed);
+            execution.logInfo(result.toString());
         }
         execution.data = "Records processed: " + recordsInserted;
     }
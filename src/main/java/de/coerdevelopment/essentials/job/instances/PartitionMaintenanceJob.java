@@ -0,0 +1,56 @@
+package de.coerdevelopment.essentials.job.instances;
+
+import de.coerdevelopment.essentials.job.Job;
+import de.coerdevelopment.essentials.job.JobExecution;
+import de.coerdevelopment.essentials.job.JobOptions;
+import de.coerdevelopment.essentials.repository.PartitionManager;
+import de.coerdevelopment.essentials.repository.PartitionSettings;
+import de.coerdevelopment.essentials.repository.SQL;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class PartitionMaintenanceJob extends Job {
+
+    public PartitionMaintenanceJob() {
+        super("PartitionMaintenance", "Creates future partitions and removes expired partitions of partitioned tables");
+    }
+
+    @Override
+    protected void before(JobExecution execution) {
+
+    }
+
+    @Override
+    protected void execute(JobExecution execution) {
+        PartitionManager partitionManager = new PartitionManager(SQL.getSQL());
+        List<String> results = new ArrayList<>();
+        for (Map.Entry<String, PartitionSettings> entry : SQL.getSQL().getPartitionSettings().entrySet()) {
+            PartitionManager.MaintenanceResult result = partitionManager.maintain(entry.getKey(), entry.getValue());
+            execution.logInfo(result.toString());
+            results.add(result.toString());
+        }
+        execution.data = String.join("; ", results);
+    }
+
+    @Override
+    protected void finish(JobExecution execution) {
+
+    }
+
+    @Override
+    public JobOptions getDefaultOptions() {
+        return new JobOptions(
+                "PartitionMaintenance",
+                true,
+                true,
+                Duration.of(6, ChronoUnit.HOURS),
+                null,
+                true,
+                3,
+                Duration.of(1, ChronoUnit.MINUTES));
+    }
+}
@@ -0,0 +1,165 @@
+package de.coerdevelopment.essentials.job.instances;
+
+import de.coerdevelopment.essentials.job.Job;
+import de.coerdevelopment.essentials.job.JobExecution;
+import de.coerdevelopment.essentials.job.JobOptions;
+import de.coerdevelopment.essentials.repository.SQL;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes rows older than the retention of their table in small chunks ordered by the key,
+ * so every delete only holds its locks for a short time and the request path is not disrupted.
+ */
+public class RetentionPurgeJob extends Job {
+
+    private final List<RetentionPolicy> policies;
+    private final int chunkSize;
+    private final long chunkSleepMillis;
+    private final long timeBudgetMillis;
+
+    public RetentionPurgeJob(List<RetentionPolicy> policies, int chunkSize, long chunkSleepMillis, long timeBudgetMillis) {
+        super("RetentionPurge", "Deletes rows which are older than the retention of their table");
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size has to be greater than zero.");
+        }
+        this.policies = List.copyOf(policies);
+        this.chunkSize = chunkSize;
+        this.chunkSleepMillis = chunkSleepMillis;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    @Override
+    protected void before(JobExecution execution) {
+
+    }
+
+    @Override
+    protected void execute(JobExecution execution) {
+        long deadline = System.currentTimeMillis() + timeBudgetMillis;
+        List<String> results = new ArrayList<>();
+        for (RetentionPolicy policy : policies) {
+            if (SQL.getSQL().getPartitionSettings(policy.tableName) != null) {
+                // expired partitions of partitioned tables are removed by the partition maintenance
+                results.add(policy.tableName + ": skipped, partitioned");
+                continue;
+            }
+            String result = purge(policy, deadline);
+            execution.logInfo(result);
+            results.add(result);
+        }
+        execution.data = String.join("; ", results);
+    }
+
+    private String purge(RetentionPolicy policy, long deadline) {
+        SQL sql = SQL.getSQL();
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(policy.retention);
+        String selectQuery = "SELECT " + policy.keyColumn + " FROM " + policy.tableName + " WHERE " + policy.timestampColumn + " < ? AND "
+                + policy.keyColumn + " > ? ORDER BY " + policy.keyColumn + " LIMIT " + chunkSize;
+        String deleteQuery = "DELETE FROM " + policy.tableName + " WHERE " + policy.keyColumn + " > ? AND " + policy.keyColumn + " <= ? AND "
+                + policy.timestampColumn + " < ?";
+        long lastKey = 0;
+        long purged = 0;
+        int chunks = 0;
+        boolean complete = false;
+        while (System.currentTimeMillis() < deadline) {
+            long[] chunk;
+            try {
+                chunk = purgeChunk(sql, selectQuery, deleteQuery, cutoff, lastKey);
+            } catch (SQLException e) {
+                // the chunk is not skipped, the execution fails and the next run starts again at the oldest rows
+                throw new RuntimeException("Purging " + policy.tableName + " failed after " + purged + " rows: " + e.getMessage(), e);
+            }
+            if (chunk == null) {
+                complete = true;
+                break;
+            }
+            purged += chunk[1];
+            chunks++;
+            lastKey = chunk[0];
+            if (chunkSleepMillis > 0) {
+                try {
+                    Thread.sleep(chunkSleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return policy.tableName + ": " + purged + " rows purged in " + chunks + " chunks" + (complete ? "" : ", time budget exhausted");
+    }
+
+    /**
+     * Deletes the next chunk after the given key, errors are thrown instead of being logged so no chunk is skipped silently
+     * @return the last key and the amount of deleted rows of the chunk or null if there are no expired rows left
+     */
+    private long[] purgeChunk(SQL sql, String selectQuery, String deleteQuery, OffsetDateTime cutoff, long lastKey) throws SQLException {
+        return sql.withConnection(transaction -> {
+            Connection connection = transaction.getConnection();
+            // the last key of the next chunk bounds the delete, so the delete only touches the rows of the chunk
+            long upperKey = -1;
+            try (PreparedStatement statement = connection.prepareStatement(selectQuery)) {
+                statement.setObject(1, cutoff);
+                statement.setLong(2, lastKey);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        upperKey = rs.getLong(1);
+                    }
+                }
+            }
+            if (upperKey < 0) {
+                return null;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(deleteQuery)) {
+                statement.setLong(1, lastKey);
+                statement.setLong(2, upperKey);
+                statement.setObject(3, cutoff);
+                return new long[]{upperKey, statement.executeUpdate()};
+            }
+        });
+    }
+
+    @Override
+    protected void finish(JobExecution execution) {
+
+    }
+
+    @Override
+    public JobOptions getDefaultOptions() {
+        return new JobOptions(
+                "RetentionPurge",
+                true,
+                true,
+                Duration.of(1, ChronoUnit.HOURS),
+                null,
+                false,
+                0,
+                null);
+    }
+
+    /**
+     * Rows of the table whose timestamp is older than the retention are purged
+     */
+    public static class RetentionPolicy {
+
+        public final String tableName;
+        public final String keyColumn;
+        public final String timestampColumn;
+        public final Duration retention;
+
+        public RetentionPolicy(String tableName, String keyColumn, String timestampColumn, Duration retention) {
+            this.tableName = tableName;
+            this.keyColumn = keyColumn;
+            this.timestampColumn = timestampColumn;
+            this.retention = retention;
+        }
+    }
+}
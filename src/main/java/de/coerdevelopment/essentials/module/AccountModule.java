@@ -2,6 +2,7 @@ package de.coerdevelopment.essentials.module;
 
 import de.coerdevelopment.essentials.CoerEssentials;
 import de.coerdevelopment.essentials.api.Account;
+import de.coerdevelopment.essentials.api.AccountAuthView;
 import de.coerdevelopment.essentials.filestorage.FileStorage;
 import de.coerdevelopment.essentials.filestorage.LocalFileStorage;
 import de.coerdevelopment.essentials.job.JobExecutor;
@@ -10,8 +11,11 @@ import de.coerdevelopment.essentials.job.instances.AccountLoginHistoryJob;
 import de.coerdevelopment.essentials.repository.AccountLoginRepository;
 import de.coerdevelopment.essentials.repository.AccountRepository;
 import de.coerdevelopment.essentials.repository.LocalFileStorageRepository;
+import de.coerdevelopment.essentials.repository.SQL;
+import de.coerdevelopment.essentials.repository.WriteBehindBuffer;
 import de.coerdevelopment.essentials.security.CoerSecurity;
 import de.coerdevelopment.essentials.security.TokenClaimAction;
+import de.coerdevelopment.essentials.utils.BinaryCacheCodec;
 import de.coerdevelopment.essentials.utils.CoerCache;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
@@ -20,15 +24,22 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class AccountModule extends Module {
 
+    /**
+     * Amount of accounts which are read from the database and written to the cache at once
+     */
+    private static final int ACCOUNT_CACHE_CHUNK_SIZE = 1000;
+
     private AccountRepository accountRepository;
     public AccountLoginRepository accountLoginRepository;
     private MailModule mailModule;
@@ -84,12 +95,13 @@ public class AccountModule extends Module {
         this.onAccountCreatedActions = new ArrayList<>();
         this.onAccountDeletedActions = new ArrayList<>();
         this.accountRepository = new AccountRepository(tableName);
+        enableProfileWriteBehind();
         this.blacklistedRefreshTokens = new ArrayList<>();
         this.accountLoginRepository = AccountLoginRepository.getInstance();
         SQLModule sqlModule = CoerEssentials.getInstance().getSQLModule();
-        accountRepository.createTable();
-        accountLoginRepository.createTable();
-        LocalFileStorageRepository.getInstance().createTable();
+        accountRepository.migrate();
+        accountLoginRepository.migrate();
+        LocalFileStorageRepository.getInstance().migrate();
         CoerSecurity.newInstance(hashAlgorithm, saltLength, tokenExpiration);
         this.mailModule = CoerEssentials.getInstance().getMailModule();
         this.restUsagePerAccountInShortTime = new ConcurrentHashMap<>();
@@ -112,7 +124,9 @@ public class AccountModule extends Module {
             throw new RuntimeException("Failed to initialize profile picture storage", e);
         }
 
-        accountsCache = new CoerCache("accounts", null, Account.class);
+        accountsCache = createAccountsCache();
+        enableAccountNearCache();
+        refreshCacheOnPropertyWrites();
 
         JobExecutor.registerJob(new AccountLoginHistoryJob());
         JobExecutor.registerJob(new AccountCacheJob());
@@ -123,15 +137,6 @@ public class AccountModule extends Module {
      * @return true if the account was created, otherwise false
      */
     public boolean createAccount(String email, String password, Locale locale, String username, String firstName, String lastName) {
-        // check if this mail is already associated with an account
-        if (accountRepository.doesEmailExists(email)) {
-            return false;
-        }
-
-        if (username != null && accountRepository.doesUsernameExists(username)) {
-            return false;
-        }
-
         if (username != null && username.contains("@")) {
             return false;
         }
@@ -140,18 +145,29 @@ public class AccountModule extends Module {
         String salt = CoerSecurity.getInstance().generateSalt();
         String passwordHash = CoerSecurity.getInstance().hashPassword(password, salt);
 
-        // create the account in database
-        long accountId;
+        // check the mail and username and create the account on a single connection
         Account account;
         try {
-            accountId = accountRepository.insertAccount(email, passwordHash, salt, locale, username, firstName, lastName);
-            account = accountRepository.getAccount(accountId);
-            accountsCache.put(accountId, account);
+            account = SQL.getSQL().inTransaction(transaction -> {
+                // check if this mail is already associated with an account
+                if (accountRepository.doesEmailExists(email)) {
+                    return null;
+                }
+                if (username != null && accountRepository.doesUsernameExists(username)) {
+                    return null;
+                }
+                return accountRepository.createAccount(email, passwordHash, salt, locale, username, firstName, lastName);
+            });
         } catch (Exception e) {
             e.printStackTrace();
             CoerEssentials.getInstance().logWarning("Error creating account: " + e.getMessage());
             return false;
         }
+        if (account == null) {
+            return false;
+        }
+        long accountId = account.accountId;
+        accountsCache.put(accountId, account);
 
         // send mail verification if enabled
         if (mailConfirmationEnabled) {
@@ -223,21 +239,24 @@ public class AccountModule extends Module {
         if (!mailConfirmationEnabled) {
             return ResponseEntity.badRequest().body("Unable to verify email.");
         }
-        // check if the mail is already verified
-        if (isEmailVerified(accountId)) {
-            return ResponseEntity.badRequest().body("Email is already verified.");
-        }
+        // a single narrow lookup covers all checks
+        AccountAuthView authView = accountRepository.getAuthView(accountId);
 
-        // check if account exists and get mail
-        String email = accountRepository.getEmail(accountId);
-        if (email == null) {
+        // check if account exists
+        if (authView == null) {
             return ResponseEntity.badRequest().body("Unable to verify mail.");
         }
 
+        // check if the mail is already verified
+        if (authView.mailVerified) {
+            return ResponseEntity.badRequest().body("Email is already verified.");
+        }
+
         // check if verification is pending
-        if (accountRepository.isEmailVerificationPending(accountId)) {
+        if (authView.isEmailVerificationPending()) {
             return ResponseEntity.badRequest().body("Verification code already send.");
         }
+        String email = authView.email;
 
         // generate new verification code
         String code = getVerificationCode();
@@ -341,17 +360,23 @@ public class AccountModule extends Module {
 
     public void lockAccount(long accountId) {
         accountRepository.setProperty(accountId, "is_locked", true);
-        String key = String.valueOf(accountId);
-        Account account = accountsCache.get(key);
-        account.isLocked = true;
-        accountsCache.put(key, account);
+        setCachedLockStatus(accountId, true);
     }
 
     public void unlockAccount(long accountId) {
         accountRepository.setProperty(accountId, "is_locked", false);
+        setCachedLockStatus(accountId, false);
+    }
+
+    private void setCachedLockStatus(long accountId, boolean locked) {
         String key = String.valueOf(accountId);
-        Account account = accountsCache.get(key);
-        account.isLocked = false;
+        Account cached = accountsCache.get(key);
+        if (cached == null) {
+            return;
+        }
+        // the cached instance may be shared by the near cache, so a copy is modified
+        Account account = cached.copy();
+        account.isLocked = locked;
         accountsCache.put(key, account);
     }
 
@@ -360,9 +385,14 @@ public class AccountModule extends Module {
     }
 
     public Resource getProfilePicture(long accountId, long targetAccountId) {
-        Account target = getAccount(targetAccountId);
-        if (target.isPrivate && accountId != targetAccountId) {
-            throw new RuntimeException("Target account is private.");
+        if (accountId != targetAccountId) {
+            Account target = getAccount(targetAccountId);
+            if (target == null) {
+                throw new RuntimeException("Target account does not exist.");
+            }
+            if (target.isPrivate) {
+                throw new RuntimeException("Target account is private.");
+            }
         }
         return profilePictureStorage.load(targetAccountId, "profilePicture");
     }
@@ -383,25 +413,84 @@ public class AccountModule extends Module {
         }
     }
 
+    /**
+     * Creates the accounts cache with the configured codec, each codec has its own prefix so switching never reads the other format
+     */
+    private CoerCache<Account> createAccountsCache() {
+        String codec = getStringOption("accountCacheCodec");
+        if ("binary".equalsIgnoreCase(codec)) {
+            return new CoerCache<>("accountsBinary", null, new BinaryCacheCodec<>(Account.class));
+        }
+        return new CoerCache<>("accounts", null, Account.class);
+    }
+
+    /**
+     * Serves hot accounts from local memory, because every authenticated request reads its account
+     */
+    private void enableAccountNearCache() {
+        Map<String, Object> options = (Map<String, Object>) getOption("accountNearCache");
+        if (options == null || !Boolean.parseBoolean(String.valueOf(options.get("enabled")))) {
+            return;
+        }
+        accountsCache.enableNearCache(
+                Integer.parseInt(String.valueOf(options.get("maxSize"))),
+                Duration.ofMillis(Long.parseLong(String.valueOf(options.get("ttlMilliseconds")))));
+    }
+
+    /**
+     * Enables the write-behind buffer for profile properties, if a flush interval greater than zero is configured
+     */
+    private void enableProfileWriteBehind() {
+        Map<String, Object> options = (Map<String, Object>) getOption("profileWriteBehind");
+        if (options == null || !Boolean.parseBoolean(String.valueOf(options.get("enabled")))) {
+            return;
+        }
+        accountRepository.enableWriteBehind(
+                Integer.parseInt(String.valueOf(options.get("batchSize"))),
+                Integer.parseInt(String.valueOf(options.get("capacity"))),
+                Long.parseLong(String.valueOf(options.get("flushIntervalMilliseconds"))));
+    }
+
+    /**
+     * Reloads the cached accounts whose buffered properties have been written, so the cache does not keep the old values
+     */
+    private void refreshCacheOnPropertyWrites() {
+        WriteBehindBuffer<String, AccountRepository.PropertyUpdate> propertyWrites = accountRepository.getPropertyWrites();
+        if (propertyWrites == null) {
+            return;
+        }
+        propertyWrites.onWritten(updates -> {
+            Set<Long> accountIds = new HashSet<>();
+            for (AccountRepository.PropertyUpdate update : updates) {
+                accountIds.add(update.accountId);
+            }
+            Map<Long, Account> accounts = new HashMap<>();
+            for (Account account : accountRepository.getAccounts(accountIds)) {
+                accounts.put(account.accountId, account);
+            }
+            accountsCache.putManyByLong(accounts);
+        });
+    }
+
     /**
      * Sets the birthday of the account
      */
     public void setBirthday(long accountId, LocalDate birthday) {
-        accountRepository.setProperty(accountId, "birthday", birthday);
+        accountRepository.setPropertyDeferred(accountId, "birthday", birthday);
     }
 
     /**
      * Sets the first name of the account
      */
     public void setFirstName(long accountId, String firstName) {
-        accountRepository.setProperty(accountId, "first_name", firstName);
+        accountRepository.setPropertyDeferred(accountId, "first_name", firstName);
     }
 
     /**
      * Sets the last name of the account
      */
     public void setLastName(long accountId, String lastName) {
-        accountRepository.setProperty(accountId, "last_name", lastName);
+        accountRepository.setPropertyDeferred(accountId, "last_name", lastName);
     }
 
     /**
@@ -415,70 +504,70 @@ public class AccountModule extends Module {
      * Sets the phone number of the account
      */
     public void setPhoneNumber(long accountId, String phoneNumber) {
-        accountRepository.setProperty(accountId, "phone_number", phoneNumber);
+        accountRepository.setPropertyDeferred(accountId, "phone_number", phoneNumber);
     }
 
     /**
      * Sets the nationality of the account
      */
     public void setNationality(long accountId, String nationality) {
-        accountRepository.setProperty(accountId, "nationality", nationality);
+        accountRepository.setPropertyDeferred(accountId, "nationality", nationality);
     }
 
     /**
      * Sets the location of the account
      */
     public void setLocation(long accountId, String location) {
-        accountRepository.setProperty(accountId, "location", location);
+        accountRepository.setPropertyDeferred(accountId, "location", location);
     }
 
     /**
      * Sets the instagram Url of the account
      */
     public void setInstagramUrl(long accountId, String instagramUrl) {
-        accountRepository.setProperty(accountId, "instagram_url", instagramUrl);
+        accountRepository.setPropertyDeferred(accountId, "instagram_url", instagramUrl);
     }
 
     /**
      * Sets the twitter Url of the account
      */
     public void setTwitterUrl(long accountId, String twitterUrl) {
-        accountRepository.setProperty(accountId, "twitter_url", twitterUrl);
+        accountRepository.setPropertyDeferred(accountId, "twitter_url", twitterUrl);
     }
 
     /**
      * Sets the facebook Url of the account
      */
     public void setFacebookUrl(long accountId, String facebookUrl) {
-        accountRepository.setProperty(accountId, "facebook_url", facebookUrl);
+        accountRepository.setPropertyDeferred(accountId, "facebook_url", facebookUrl);
     }
 
     /**
      * Sets the linkedin Url of the account
      */
     public void setLinkedinUrl(long accountId, String linkedinUrl) {
-        accountRepository.setProperty(accountId, "linked_in_url", linkedinUrl);
+        accountRepository.setPropertyDeferred(accountId, "linked_in_url", linkedinUrl);
     }
 
     /**
      * Sets the website Url of the account
      */
     public void setWebsiteUrl(long accountId, String websiteUrl) {
-        accountRepository.setProperty(accountId, "website_url", websiteUrl);
+        accountRepository.setPropertyDeferred(accountId, "website_url", websiteUrl);
     }
 
     /**
      * Sets the about me text of the account
      */
     public void setAboutMe(long accountId, String aboutMe) {
-        accountRepository.setProperty(accountId, "about_me", aboutMe);
+        accountRepository.setPropertyDeferred(accountId, "about_me", aboutMe);
     }
 
     /**
      * Sets the profile picture Url of the account
      */
     public void setProfilePictureUrl(long accountId, String profilePictureUrl) {
-        accountRepository.setProperty(accountId, "profile_picture_url", profilePictureUrl);
+        accountRepository.setPropertyDeferred(accountId, "profile_picture_url", profilePictureUrl);
     }
 
     public void setPrivateStatus(long accountId, boolean isPrivate) {
@@ -521,13 +610,25 @@ public class AccountModule extends Module {
     }
 
     public int updateAccounts() {
-        Map<Long, Account> accounts = accountRepository.getAllAccountsById();
-        Map<String, Account> accountsById = new HashMap<>();
-        for (Long accountId : accounts.keySet()) {
-            accountsById.put(String.valueOf(accountId), accounts.get(accountId));
+        Map<String, Account> chunk = new HashMap<>();
+        int updated = 0;
+        try (Stream<Account> accounts = accountRepository.streamAllAccounts(ACCOUNT_CACHE_CHUNK_SIZE)) {
+            Iterator<Account> iterator = accounts.iterator();
+            while (iterator.hasNext()) {
+                Account account = iterator.next();
+                chunk.put(String.valueOf(account.accountId), account);
+                if (chunk.size() >= ACCOUNT_CACHE_CHUNK_SIZE) {
+                    accountsCache.putMany(chunk);
+                    updated += chunk.size();
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            accountsCache.putMany(chunk);
+            updated += chunk.size();
         }
-        accountsCache.putMany(accountsById);
-        return accountsById.size();
+        return updated;
     }
 
 }
@@ -7,16 +7,7 @@ import java.util.Map;
 
 public enum ModuleType {
 
-    SQL("SQL", Map.of(
-            "host", "localhost",
-            "username", "username",
-            "password", "password",
-            "database", "database",
-            "port", 3306,
-            "type", "mysql",
-            "minPoolSize", 2,
-            "maxPoolSize", 8
-    ), List.of()),
+    SQL("SQL", getSQLOptions(), List.of()),
     MAIL("Mail", Map.of(
             "host", "host",
             "port", 587,
@@ -31,7 +22,9 @@ public enum ModuleType {
             "username", "",
             "password", "",
             "database", 0,
-            "maxPoolSize", 2
+            "maxPoolSize", 2,
+            "pipelineChunkSize", 1000,
+            "compressionThresholdBytes", 0
     ), List.of());
 
     public String name;
@@ -44,6 +37,72 @@ public enum ModuleType {
         this.dependencies = dependencies;
     }
 
+    private static Map<String, Object> getSQLOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("host", "localhost");
+        options.put("username", "username");
+        options.put("password", "password");
+        options.put("database", "database");
+        options.put("port", 3306);
+        options.put("type", "mysql");
+        options.put("minPoolSize", 2);
+        options.put("maxPoolSize", 8);
+        options.put("statementCacheSize", 256);
+        options.put("serverSidePrepare", true);
+        options.put("replicas", List.of());
+        options.put("replicaEjectionSeconds", 30);
+        options.put("replicaConnectionTimeoutMilliseconds", 1000);
+        options.put("replicaHealthCheckSeconds", 5);
+        // reading the replication status needs the REPLICATION CLIENT privilege on mysql and mariadb
+        options.put("replicaMaxLagMilliseconds", 0);
+        options.put("readYourWritesWindowMilliseconds", 2000);
+        options.put("slowQueryThresholdMilliseconds", 1000);
+        options.put("statementTimeoutMilliseconds", 30000);
+        options.put("serverStatementTimeoutMilliseconds", 0);
+        options.put("adaptivePoolSizing", Map.of(
+                "enabled", false,
+                "minMaxPoolSize", 8,
+                "maxMaxPoolSize", 32,
+                "intervalSeconds", 10,
+                "waitThresholdMilliseconds", 20,
+                "databaseSaturationThreshold", 0.85
+        ));
+        // partitioning only applies to tables which are created after it has been enabled
+        options.put("partitioning", Map.of(
+                "account_logins", getPartitionOptions(12),
+                "job_executions", getPartitionOptions(3)
+        ));
+        options.put("retention", Map.of(
+                "chunkSize", 1000,
+                "chunkSleepMilliseconds", 100,
+                "timeBudgetSeconds", 300,
+                "tables", Map.of(
+                        "account_logins", getRetentionOptions(false, "login_id", "login_at", 365),
+                        "job_executions", getRetentionOptions(false, "job_id", "started_at", 90)
+                )
+        ));
+        return options;
+    }
+
+    private static Map<String, Object> getPartitionOptions(int retention) {
+        return Map.of(
+                "enabled", false,
+                "interval", "month",
+                "premake", 2,
+                "retention", retention,
+                "dropExpired", true
+        );
+    }
+
+    private static Map<String, Object> getRetentionOptions(boolean enabled, String keyColumn, String timestampColumn, int retentionDays) {
+        return Map.of(
+                "enabled", enabled,
+                "keyColumn", keyColumn,
+                "timestampColumn", timestampColumn,
+                "retentionDays", retentionDays
+        );
+    }
+
     private static Map<String, Object> getAccountOptions() {
         Map<String, Object> options = new HashMap<>();
         options.put("tableName", "accounts");
@@ -69,6 +128,18 @@ public enum ModuleType {
                 "maxFileSizeBytes", 1024 * 1024 * 5,
                 "maxStorageSizeBytes", -1
         ));
+        options.put("accountCacheCodec", "json");
+        options.put("accountNearCache", Map.of(
+                "enabled", false,
+                "maxSize", 10000,
+                "ttlMilliseconds", 5000
+        ));
+        options.put("profileWriteBehind", Map.of(
+                "enabled", false,
+                "batchSize", 200,
+                "capacity", 10000,
+                "flushIntervalMilliseconds", 1000
+        ));
         return options;
     }
 }
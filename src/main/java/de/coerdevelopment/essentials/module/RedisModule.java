@@ -1,30 +1,60 @@
 package de.coerdevelopment.essentials.module;
 
+import de.coerdevelopment.essentials.CoerEssentials;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class RedisModule extends Module {
 
+    /**
+     * Channel on which caches announce changed keys, so other nodes can evict their local copies
+     */
+    public static final String INVALIDATION_CHANNEL = "coer:cache:invalidations";
+
+    /**
+     * Codec of the connections used by the caches, which store their values as encoded by their {@link de.coerdevelopment.essentials.utils.CacheCodec}
+     */
+    private static final RedisCodec<String, byte[]> BINARY_CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
     private String host;
     private int port;
     private String username;
     private String password;
     private int database;
     private int maxPoolSize;
+    private int pipelineChunkSize;
+    private int compressionThresholdBytes;
 
     private RedisClient client;
     private final List<StatefulRedisConnection<String, String>> connections = new ArrayList<>();
     private final List<RedisCommands<String, String>> commands = new ArrayList<>();
+    private final List<StatefulRedisConnection<String, byte[]>> binaryConnections = new ArrayList<>();
+    private final List<RedisCommands<String, byte[]>> binaryCommands = new ArrayList<>();
+    private final List<RedisAsyncCommands<String, byte[]>> asyncCommands = new ArrayList<>();
     private RedisCommands<String, String> sharedProxy;
+    private RedisCommands<String, byte[]> sharedBinaryProxy;
     private final AtomicInteger rr = new AtomicInteger();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Consumer<List<String>>> invalidationListeners = new ConcurrentHashMap<>();
+    private StatefulRedisPubSubConnection<String, String> pubSubConnection;
+    private StatefulRedisConnection<String, byte[]> bulkConnection;
 
     public RedisModule() {
         super(ModuleType.REDIS);
@@ -34,6 +64,8 @@ public class RedisModule extends Module {
         this.password = getStringOption("password");
         this.database = getIntOption("database");
         this.maxPoolSize = getIntOption("maxPoolSize");
+        this.pipelineChunkSize = getIntOption("pipelineChunkSize");
+        this.compressionThresholdBytes = getIntOption("compressionThresholdBytes");
         init();
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {close();}));
     }
@@ -42,10 +74,119 @@ public class RedisModule extends Module {
         return sharedProxy;
     }
 
+    /**
+     * Returns the commands of the shared binary connections in round-robin order, values are read and written as raw bytes
+     */
+    public RedisCommands<String, byte[]> getSharedBinaryCommands() {
+        return sharedBinaryProxy;
+    }
+
+    /**
+     * Returns the async commands of one of the shared binary connections in round-robin order.
+     * The commands of many callers are multiplexed over the connection without blocking them.
+     */
+    public RedisAsyncCommands<String, byte[]> getAsyncCommands() {
+        return asyncCommands.get(Math.floorMod(rr.getAndIncrement(), asyncCommands.size()));
+    }
+
+    /**
+     * Returns the connection used for pipelined bulk writes.
+     * Pipelining disables the automatic flush of the whole connection, so it is kept apart from the shared connections
+     * and callers have to synchronize on it while they pipeline.
+     */
+    public synchronized StatefulRedisConnection<String, byte[]> getBulkConnection() {
+        if (bulkConnection == null) {
+            bulkConnection = client.connect(BINARY_CODEC);
+        }
+        return bulkConnection;
+    }
+
+    /**
+     * Returns the amount of commands which are sent in one pipelined flush
+     */
+    public int getPipelineChunkSize() {
+        return pipelineChunkSize;
+    }
+
+    /**
+     * Returns the size in bytes from which cache values are compressed, zero or less disables the compression
+     */
+    public int getCompressionThresholdBytes() {
+        return compressionThresholdBytes;
+    }
+
+    /**
+     * Publishes that the given keys of the cache prefix have changed, no keys means the whole cache has changed
+     */
+    public void publishInvalidation(String prefix, Collection<String> keys) {
+        sharedProxy.publish(INVALIDATION_CHANNEL, getInvalidationMessage(prefix, keys));
+    }
+
+    /**
+     * Same as {@link #publishInvalidation(String, Collection)} without blocking the caller
+     */
+    public RedisFuture<Long> publishInvalidationAsync(String prefix, Collection<String> keys) {
+        return getAsyncCommands().publish(INVALIDATION_CHANNEL, getInvalidationMessage(prefix, keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String getInvalidationMessage(String prefix, Collection<String> keys) {
+        StringBuilder message = new StringBuilder(nodeId).append('\n').append(prefix);
+        for (String key : keys) {
+            message.append('\n').append(key);
+        }
+        return message.toString();
+    }
+
+    /**
+     * Calls the listener with the changed keys whenever another node publishes an invalidation for the cache prefix.
+     * An empty list means that the whole cache has changed.
+     */
+    public synchronized void subscribeInvalidations(String prefix, Consumer<List<String>> listener) {
+        invalidationListeners.put(prefix, listener);
+        if (pubSubConnection != null) {
+            return;
+        }
+        // the connection resubscribes by itself after a reconnect
+        pubSubConnection = client.connectPubSub();
+        pubSubConnection.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                onInvalidation(message);
+            }
+        });
+        pubSubConnection.sync().subscribe(INVALIDATION_CHANNEL);
+    }
+
+    private void onInvalidation(String message) {
+        String[] lines = message.split("\n");
+        if (lines.length < 2 || lines[0].equals(nodeId)) {
+            // the own changes are already applied to the local caches
+            return;
+        }
+        Consumer<List<String>> listener = invalidationListeners.get(lines[1]);
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(Arrays.asList(lines).subList(2, lines.length));
+        } catch (Exception e) {
+            CoerEssentials.getInstance().logWarning("Error applying cache invalidation for " + lines[1] + ": " + e.getMessage());
+        }
+    }
+
     public void close() {
+        if (pubSubConnection != null) {
+            try { pubSubConnection.close(); } catch (Exception ignored) {}
+        }
+        if (bulkConnection != null) {
+            try { bulkConnection.close(); } catch (Exception ignored) {}
+        }
         for (var c : connections) {
             try { c.close(); } catch (Exception ignored) {}
         }
+        for (var c : binaryConnections) {
+            try { c.close(); } catch (Exception ignored) {}
+        }
         if (client != null) {
             try { client.shutdown(); } catch (Exception ignored) {}
         }
@@ -57,8 +198,13 @@ public class RedisModule extends Module {
             var conn = client.connect();
             connections.add(conn);
             commands.add(conn.sync());
+            var binaryConn = client.connect(BINARY_CODEC);
+            binaryConnections.add(binaryConn);
+            binaryCommands.add(binaryConn.sync());
+            asyncCommands.add(binaryConn.async());
         }
         this.sharedProxy = buildRoundRobinProxy(commands);
+        this.sharedBinaryProxy = buildRoundRobinProxy(binaryCommands);
     }
 
     private String getUri() {
@@ -68,7 +214,7 @@ public class RedisModule extends Module {
         return "redis://" + userInfo + host + ":" + port + "/" + database;
     }
 
-    private RedisCommands<String, String> buildRoundRobinProxy(List<RedisCommands<String, String>> cmds) {
+    private <V> RedisCommands<String, V> buildRoundRobinProxy(List<RedisCommands<String, V>> cmds) {
         Class<?> iface = RedisCommands.class;
         InvocationHandler ih = new InvocationHandler() {
             @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
@@ -79,11 +225,11 @@ public class RedisModule extends Module {
                 if (name.equals("equals"))   return proxy == args[0];
 
                 int i = Math.floorMod(rr.getAndIncrement(), cmds.size());
-                RedisCommands<String, String> target = cmds.get(i);
+                RedisCommands<String, V> target = cmds.get(i);
                 return method.invoke(target, args);
             }
         };
-        return (RedisCommands<String, String>) Proxy.newProxyInstance(
+        return (RedisCommands<String, V>) Proxy.newProxyInstance(
                 iface.getClassLoader(), new Class<?>[]{iface}, ih);
     }
 
@@ -2,8 +2,21 @@ package de.coerdevelopment.essentials.module;
 
 import de.coerdevelopment.essentials.CoerEssentials;
 import de.coerdevelopment.essentials.job.JobExecutionRepository;
+import de.coerdevelopment.essentials.job.JobExecutor;
+import de.coerdevelopment.essentials.job.instances.PartitionMaintenanceJob;
+import de.coerdevelopment.essentials.job.instances.RetentionPurgeJob;
+import de.coerdevelopment.essentials.repository.AdaptivePoolSizer;
+import de.coerdevelopment.essentials.repository.PartitionInterval;
+import de.coerdevelopment.essentials.repository.PartitionSettings;
+import de.coerdevelopment.essentials.repository.PoolMetrics;
 import de.coerdevelopment.essentials.repository.SQL;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public class SQLModule extends Module {
 
     public SQLModule() {
@@ -24,11 +37,33 @@ public class SQLModule extends Module {
         int minPoolSize = getIntOption("minPoolSize");
         int maxPoolSize = getIntOption("maxPoolSize");
         SQL sql = SQL.newSQL(host, username, password, database, port, type, minPoolSize, maxPoolSize);
+        sql.setStatementCacheSize(getIntOption("statementCacheSize"));
+        sql.setServerSidePrepare(getBooleanOption("serverSidePrepare"));
+        sql.clearReplicas();
+        for (String replica : getReplicas()) {
+            String[] hostAndPort = replica.trim().split(":");
+            sql.addReplica(hostAndPort[0], hostAndPort.length > 1 ? Integer.parseInt(hostAndPort[1]) : port);
+        }
+        sql.getReplicaSet().setEjectionMillis(getLongOption("replicaEjectionSeconds") * 1000);
+        sql.getReplicaSet().setConnectionTimeoutMillis(getLongOption("replicaConnectionTimeoutMilliseconds"));
+        sql.getReplicaSet().setHealthCheckIntervalMillis(getLongOption("replicaHealthCheckSeconds") * 1000);
+        sql.getReplicaSet().setMaxLagMillis(getLongOption("replicaMaxLagMilliseconds"));
+        sql.setReadYourWritesWindowMillis(getLongOption("readYourWritesWindowMilliseconds"));
+        sql.setSlowQueryThresholdMillis(getLongOption("slowQueryThresholdMilliseconds"));
+        sql.setStatementTimeoutMillis(getLongOption("statementTimeoutMilliseconds"));
+        sql.setServerStatementTimeoutMillis(getLongOption("serverStatementTimeoutMilliseconds"));
+        sql.setAdaptivePoolSizer(getAdaptivePoolSizer(sql));
+        sql.clearPartitionSettings();
+        getPartitionSettings().forEach(sql::setPartitionSettings);
         try {
             sql.connect();
             Runtime.getRuntime().addShutdownHook(disconnectOnShutdownThread());
             CoerEssentials.getInstance().logInfo("Successfully established connection to SQL database.");
-            JobExecutionRepository.getInstance().createTable();
+            JobExecutionRepository.getInstance().migrate();
+            if (!sql.getPartitionSettings().isEmpty()) {
+                JobExecutor.registerJob(new PartitionMaintenanceJob());
+            }
+            registerRetentionPurgeJob();
             return sql.isPoolConnected();
         } catch (Exception e) {
             CoerEssentials.getInstance().logError("Error establishing connection to SQL database.");
@@ -38,6 +73,91 @@ public class SQLModule extends Module {
         }
     }
 
+    /**
+     * Returns the configured read replicas, every replica is configured as "host" or "host:port"
+     */
+    private List<String> getReplicas() {
+        List<String> replicas = (List<String>) getOption("replicas");
+        return replicas != null ? replicas : List.of();
+    }
+
+    /**
+     * Returns the current state of the connection pool of the primary or null if it is not connected
+     */
+    public PoolMetrics getPoolMetrics() {
+        SQL sql = SQL.getSQL();
+        return sql != null ? sql.getPoolMetrics() : null;
+    }
+
+    /**
+     * Returns the configured adaptive pool sizer or null if adaptive sizing is disabled
+     */
+    private AdaptivePoolSizer getAdaptivePoolSizer(SQL sql) {
+        Map<String, Object> options = (Map<String, Object>) getOption("adaptivePoolSizing");
+        if (options == null || !Boolean.parseBoolean(String.valueOf(options.get("enabled")))) {
+            return null;
+        }
+        return new AdaptivePoolSizer(sql,
+                Integer.parseInt(String.valueOf(options.get("minMaxPoolSize"))),
+                Integer.parseInt(String.valueOf(options.get("maxMaxPoolSize"))),
+                Long.parseLong(String.valueOf(options.get("intervalSeconds"))) * 1000,
+                Double.parseDouble(String.valueOf(options.get("waitThresholdMilliseconds"))),
+                Double.parseDouble(String.valueOf(options.get("databaseSaturationThreshold"))));
+    }
+
+    /**
+     * Returns the settings of all tables with enabled partitioning
+     */
+    private Map<String, PartitionSettings> getPartitionSettings() {
+        Map<String, Map<String, Object>> partitioning = (Map<String, Map<String, Object>>) getOption("partitioning");
+        Map<String, PartitionSettings> settings = new HashMap<>();
+        if (partitioning == null) {
+            return settings;
+        }
+        for (Map.Entry<String, Map<String, Object>> entry : partitioning.entrySet()) {
+            Map<String, Object> options = entry.getValue();
+            if (!Boolean.parseBoolean(String.valueOf(options.get("enabled")))) {
+                continue;
+            }
+            settings.put(entry.getKey(), new PartitionSettings(
+                    PartitionInterval.valueOf(String.valueOf(options.get("interval")).toUpperCase()),
+                    Integer.parseInt(String.valueOf(options.get("premake"))),
+                    Integer.parseInt(String.valueOf(options.get("retention"))),
+                    Boolean.parseBoolean(String.valueOf(options.get("dropExpired")))));
+        }
+        return settings;
+    }
+
+    /**
+     * Registers the purge job if the retention of at least one table is enabled
+     */
+    private void registerRetentionPurgeJob() {
+        Map<String, Object> retention = (Map<String, Object>) getOption("retention");
+        if (retention == null) {
+            return;
+        }
+        Map<String, Map<String, Object>> tables = (Map<String, Map<String, Object>>) retention.get("tables");
+        List<RetentionPurgeJob.RetentionPolicy> policies = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> entry : tables.entrySet()) {
+            Map<String, Object> options = entry.getValue();
+            if (!Boolean.parseBoolean(String.valueOf(options.get("enabled")))) {
+                continue;
+            }
+            policies.add(new RetentionPurgeJob.RetentionPolicy(
+                    entry.getKey(),
+                    String.valueOf(options.get("keyColumn")),
+                    String.valueOf(options.get("timestampColumn")),
+                    Duration.ofDays(Long.parseLong(String.valueOf(options.get("retentionDays"))))));
+        }
+        if (policies.isEmpty()) {
+            return;
+        }
+        JobExecutor.registerJob(new RetentionPurgeJob(policies,
+                Integer.parseInt(String.valueOf(retention.get("chunkSize"))),
+                Long.parseLong(String.valueOf(retention.get("chunkSleepMilliseconds"))),
+                Duration.ofSeconds(Long.parseLong(String.valueOf(retention.get("timeBudgetSeconds")))).toMillis()));
+    }
+
     private Thread disconnectOnShutdownThread() {
         return new Thread(() -> {
             try {
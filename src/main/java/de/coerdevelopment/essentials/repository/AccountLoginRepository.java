@@ -23,22 +23,43 @@ public class AccountLoginRepository extends Repository {
 
     private AccountLoginRepository() {
         super("account_logins");
+        registerStatement("getAccountLogins", columnMapper.getSelectStatement(tableName) + " WHERE mail = ?");
+        registerStatement("getAccountLoginsSince", columnMapper.getSelectStatement(tableName) + " WHERE mail = ? AND login_at >= ? ORDER BY login_at DESC");
     }
 
     @Override
     public void createTable() {
+        sql.executeQuery(getTable().getCreateTableStatement());
+    }
+
+    @Override
+    public List<Migration> getMigrations() {
+        SQLTable table = getTable();
+        return List.of(
+                new Migration(1, "Create account logins").createTable(table),
+                new Migration(2, "Index logins by mail and time").createIndex(table, "idx_account_logins_mail_login_at", "mail", "login_at")
+        );
+    }
+
+    private SQLTable getTable() {
         SQLTable table = new SQLTable(tableName);
         table.addAutoKey("login_id");
         table.addString("mail", 255, false);
         table.addDateTimeWithTimezone("login_at", false);
         table.addBoolean("success", false);
         table.addString("failure_reason", 255, true);
-        sql.executeQuery(table.getCreateTableStatement());
+        applyPartitioning(table, "login_at");
+        return table;
     }
 
-    public void insertLogins(List<AccountLogin> logins) {
+    public BulkLoadResult insertLogins(List<AccountLogin> logins) {
         try {
-            sql.batchInsert(tableName, logins, getColumnMapper(),500);
+            return sql.bulkLoad(tableName, List.of("mail", "login_at", "success", "failure_reason"), logins, (login, row) -> {
+                row[0] = login.mail;
+                row[1] = login.loginAt;
+                row[2] = login.success;
+                row[3] = login.failureReason;
+            }, 500);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -46,41 +67,61 @@ public class AccountLoginRepository extends Repository {
 
     public List<AccountLogin> getAccountLogins(String mail) {
         List<AccountLogin> accountLogins = new ArrayList<>();
-        String query = "SELECT * FROM " + tableName + " WHERE mail = ?";
         ColumnMapper<AccountLogin> columnMapper = getColumnMapper();
-        sql.executeQuery(query, new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getAccountLogins"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet resultSet = statement.getResultSet();
+                ColumnMapper<AccountLogin> rowMapper = columnMapper.bind(resultSet);
                 while (resultSet.next()) {
-                    accountLogins.add(columnMapper.getObjectFromResultSetEntry(resultSet));
+                    accountLogins.add(rowMapper.getObjectFromResultSetEntry(resultSet));
                 }
             }
         }, mail);
         return accountLogins;
     }
 
-    private ColumnMapper<AccountLogin> getColumnMapper() {
-        return new ColumnMapper<AccountLogin>() {
+    /**
+     * Returns the logins of the mail since the given time, on partitioned tables only the partitions of that time range are read
+     */
+    public List<AccountLogin> getAccountLogins(String mail, OffsetDateTime since) {
+        List<AccountLogin> accountLogins = new ArrayList<>();
+        sql.executeNamedQuery(statementName("getAccountLoginsSince"), new StatementCustomAction() {
             @Override
-            public Map<String, Object> mapColumns(AccountLogin obj) {
-                return Map.of("mail", obj.mail,
-                        "login_at", obj.loginAt,
-                        "success", obj.success,
-                        "failure_reason", obj.failureReason);
+            public void onAfterExecute(PreparedStatement statement) throws SQLException {
+                ResultSet resultSet = statement.getResultSet();
+                ColumnMapper<AccountLogin> rowMapper = columnMapper.bind(resultSet);
+                while (resultSet.next()) {
+                    accountLogins.add(rowMapper.getObjectFromResultSetEntry(resultSet));
+                }
             }
+        }, mail, since);
+        return accountLogins;
+    }
 
-            @Override
-            public AccountLogin getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
-                return new AccountLogin(
-                        resultSet.getLong("login_id"),
-                        resultSet.getString("mail"),
-                        resultSet.getObject("login_at", OffsetDateTime.class),
-                        resultSet.getBoolean("success"),
-                        resultSet.getString("failure_reason")
-                );
-            }
-        };
+    private ColumnMapper<AccountLogin> getColumnMapper() {
+        return columnMapper;
     }
 
+    private static final IndexedColumnMapper<AccountLogin> columnMapper = new IndexedColumnMapper<>("login_id", "mail", "login_at", "success", "failure_reason") {
+        @Override
+        public Map<String, Object> mapColumns(AccountLogin obj) {
+            return Map.of("mail", obj.mail,
+                    "login_at", obj.loginAt,
+                    "success", obj.success,
+                    "failure_reason", obj.failureReason);
+        }
+
+        @Override
+        protected AccountLogin map(ResultSet resultSet, int[] indexes) throws SQLException {
+            return new AccountLogin(
+                    resultSet.getLong(indexes[0]),
+                    resultSet.getString(indexes[1]),
+                    resultSet.getObject(indexes[2], OffsetDateTime.class),
+                    resultSet.getBoolean(indexes[3]),
+                    resultSet.getString(indexes[4])
+            );
+        }
+    };
+
 }
@@ -1,7 +1,9 @@
 package de.coerdevelopment.essentials.repository;
 
 import de.coerdevelopment.essentials.api.Account;
+import de.coerdevelopment.essentials.api.AccountAuthView;
 import de.coerdevelopment.essentials.security.CoerSecurity;
+import de.coerdevelopment.essentials.utils.LookupTables;
 
 import javax.money.Monetary;
 import java.sql.Connection;
@@ -10,19 +12,56 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 public class AccountRepository extends Repository {
+
+    private WriteBehindBuffer<String, PropertyUpdate> propertyWrites;
+
     public AccountRepository(String tableName) {
         super(tableName);
+        registerStatements();
+    }
+
+    private void registerStatements() {
+        registerStatement("insertAccount", "INSERT INTO " + tableName + " (email, password, salt, created_at, locale, preferred_currency, username, first_name, last_name) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        registerStatement("getAccountIdByEmail", "SELECT account_id FROM " + tableName + " WHERE email = ?");
+        registerStatement("getAccountIdByUsername", "SELECT account_id FROM " + tableName + " WHERE username = ?");
+        registerStatement("getEmail", "SELECT email FROM " + tableName + " WHERE account_id = ?");
+        registerStatement("isEmailVerified", "SELECT email_verified FROM " + tableName + " WHERE account_id = ?");
+        registerStatement("setEmailVerified", "UPDATE " + tableName + " SET email_verified = ?, email_verification_code = null, email_verification_code_expiration = null  WHERE account_id = ?");
+        registerStatement("setEmailVerificationCode", "UPDATE " + tableName + " SET email_verification_code = ?, email_verification_code_expiration = ? WHERE account_id = ?");
+        registerStatement("getEmailVerificationCode", "SELECT email_verification_code, email_verification_code_expiration FROM " + tableName + " WHERE account_id = ?");
+        registerStatement("getPendingEmailVerification", "SELECT email_verification_code_expiration FROM " + tableName + " WHERE account_id = ? AND email_verified = false");
+        registerStatement("getCredentials", "SELECT account_id, password, salt FROM " + tableName + " WHERE email = ? OR username = ?");
+        registerStatement("changePassword", "UPDATE " + tableName + " SET password = ?, salt = ? WHERE account_id = ?");
+        registerStatement("getAccount", columnMapper.getSelectStatement(tableName) + " WHERE account_id = ?");
+        registerStatement("getAuthView", authViewMapper.getSelectStatement(tableName) + " WHERE account_id = ?");
+        registerStatement("deleteAccount", "DELETE FROM " + tableName + " WHERE account_id = ?");
     }
 
     @Override
     public void createTable() {
+        sql.executeQuery(getTable().getCreateTableStatement());
+    }
+
+    @Override
+    public List<Migration> getMigrations() {
+        return List.of(new Migration(1, "Create accounts").createTable(getTable()));
+    }
+
+    private SQLTable getTable() {
         SQLTable table = new SQLTable(tableName);
         table.addAutoKey("account_id");
         table.addUniqueString("email", 256, false);
@@ -51,13 +90,13 @@ public class AccountRepository extends Repository {
         table.addString("email_verification_code", 64, true);
         table.addLong("email_verification_code_expiration", true);
         table.addCheck("email = LOWER(email)");
-        table.addCheck("email ~* '^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$'");
-        sql.executeQuery(table.getCreateTableStatement());
+        table.addRegexCheck("email", "^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+        return table;
     }
 
     public long insertAccount(String email, String password, String salt, Locale locale, String username, String firstName, String lastName) {
         AtomicLong accountId = new AtomicLong(-1);
-        sql.executeQueryReturningKeys("INSERT INTO " + tableName + " (email, password, salt, created_at, locale, preferred_currency, username, first_name, last_name) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", new StatementCustomAction() {
+        sql.executeNamedQueryReturningKeys(statementName("insertAccount"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getGeneratedKeys();
@@ -69,9 +108,30 @@ public class AccountRepository extends Repository {
         return accountId.get();
     }
 
+    /**
+     * Inserts the account and returns it with a single round trip, returns null if the insert failed
+     */
+    public Account createAccount(String email, String password, String salt, Locale locale, String username, String firstName, String lastName) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("email", email);
+        values.put("password", password);
+        values.put("salt", salt);
+        values.put("created_at", OffsetDateTime.now());
+        values.put("locale", locale.toLanguageTag());
+        values.put("preferred_currency", Monetary.getCurrency(locale).getCurrencyCode());
+        values.put("username", username);
+        values.put("first_name", firstName);
+        values.put("last_name", lastName);
+        // all columns which are not inserted are nullable or default to false
+        return sql.insertReturning(tableName, values, columnMapper, (accountId, inserted) -> new Account(accountId, email,
+                (OffsetDateTime) inserted.get("created_at"), null, firstName, lastName, username, null, null, null,
+                LookupTables.getLocale((String) inserted.get("locale")), LookupTables.getCurrency((String) inserted.get("preferred_currency")),
+                null, null, null, null, null, null, null, false, false, false));
+    }
+
     public long getAccountIdByEmail(String email) {
         AtomicLong accountId = new AtomicLong(-1);
-        sql.executeQuery("SELECT account_id FROM " + tableName + " WHERE email = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getAccountIdByEmail"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -85,7 +145,7 @@ public class AccountRepository extends Repository {
 
     public boolean doesEmailExists(String email) {
         AtomicBoolean exists = new AtomicBoolean(false);
-        sql.executeQuery("SELECT account_id FROM " + tableName + " WHERE email = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getAccountIdByEmail"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -97,7 +157,7 @@ public class AccountRepository extends Repository {
 
     public boolean doesUsernameExists(String username) {
         AtomicBoolean exists = new AtomicBoolean(false);
-        sql.executeQuery("SELECT account_id FROM " + tableName + " WHERE username = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getAccountIdByUsername"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -109,7 +169,7 @@ public class AccountRepository extends Repository {
 
     public String getEmail(long accountId) {
         AtomicReference<String> email = new AtomicReference<>();
-        sql.executeQuery("SELECT email FROM " + tableName + " WHERE account_id = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getEmail"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -123,7 +183,7 @@ public class AccountRepository extends Repository {
 
     public boolean isEmailVerified(long accountId) {
         AtomicBoolean verified = new AtomicBoolean(false);
-        sql.executeQuery("SELECT email_verified FROM " + tableName + " WHERE account_id = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("isEmailVerified"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -136,17 +196,17 @@ public class AccountRepository extends Repository {
     }
 
     public void setEmailVerified(long accountId) {
-        sql.executeQuery("UPDATE " + tableName + " SET email_verified = ?, email_verification_code = null, email_verification_code_expiration = null  WHERE account_id = ?", true, accountId);
+        sql.executeNamedQuery(statementName("setEmailVerified"), true, accountId);
     }
 
     public void setEmailVerificationCode(long accountId, String emailVerificationCode, long emailVerificationCodeExpiration) {
-        sql.executeQuery("UPDATE " + tableName + " SET email_verification_code = ?, email_verification_code_expiration = ? WHERE account_id = ?", emailVerificationCode, emailVerificationCodeExpiration, accountId);
+        sql.executeNamedQuery(statementName("setEmailVerificationCode"), emailVerificationCode, emailVerificationCodeExpiration, accountId);
     }
 
     public boolean doesEmailVerificationCodeMatch(long accountId, String emailVerificationCode) throws Exception {
         AtomicBoolean verified = new AtomicBoolean(false);
         AtomicBoolean expired = new AtomicBoolean(false);
-        sql.executeQuery("SELECT email_verification_code, email_verification_code_expiration FROM " + tableName + " WHERE account_id = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getEmailVerificationCode"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -169,7 +229,7 @@ public class AccountRepository extends Repository {
 
     public boolean isEmailVerificationPending(long accountId) {
         AtomicBoolean verified = new AtomicBoolean(false);
-        PreparedStatement statement = sql.executeQuery("SELECT email_verification_code_expiration FROM " + tableName + " WHERE account_id = ? AND email_verified = false", new StatementCustomAction() {
+        PreparedStatement statement = sql.executeNamedQuery(statementName("getPendingEmailVerification"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -189,7 +249,7 @@ public class AccountRepository extends Repository {
         AtomicBoolean matches = new AtomicBoolean(false);
         AtomicBoolean accountExists = new AtomicBoolean(false);
         AtomicLong accountId = new AtomicLong(-1);
-        PreparedStatement statement = sql.executeQuery("SELECT account_id, password, salt FROM " + tableName + " WHERE email = ? OR username = ?", new StatementCustomAction() {
+        PreparedStatement statement = sql.executeNamedQuery(statementName("getCredentials"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -215,10 +275,12 @@ public class AccountRepository extends Repository {
     }
 
     public void changePassword(long accountId, String password, String salt) {
-        sql.executeQuery("UPDATE " + tableName + " SET password = ?, salt = ? WHERE account_id = ?", password, salt, accountId);
+        sql.executeNamedQuery(statementName("changePassword"), password, salt, accountId);
     }
 
     public boolean updateAccount(long accountId, Account account) {
+        // the full update is newer than the buffered properties, which would otherwise overwrite it once they are flushed
+        discardPendingProperties(accountId);
         try (Connection connection = sql.getConnection()) {
             PreparedStatement ps = connection.prepareStatement("UPDATE " + tableName + " SET " +
                     "birthday = ?, first_name = ?, last_name = ?, username = ?, phone_number = ?, nationality = ?, location = ?, locale = ?, preferred_currency = ?, instagram_url = ?, twitter_url = ?, facebook_url = ?, linked_in_url = ?, website_url = ?, about_me = ?, profile_picture_url = ?, is_private = ? WHERE account_id = ?");
@@ -241,7 +303,10 @@ public class AccountRepository extends Repository {
             ps.setString(index++, account.profilePictureUrl);
             ps.setBoolean(index++, account.isPrivate);
             ps.setLong(index++, accountId);
-            return ps.executeUpdate() > 0;
+            boolean updated = ps.executeUpdate() > 0;
+            // the account is usually read back right away, which has to go to the primary instead of a lagging replica
+            sql.markWrite();
+            return updated;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -251,23 +316,103 @@ public class AccountRepository extends Repository {
         sql.executeQuery("UPDATE " + tableName + " SET " + property + " = ? WHERE account_id = ?", value, accountId);
     }
 
+    /**
+     * Sets the property through the write-behind buffer if it is enabled, otherwise the property is set immediately.
+     * Values violating a constraint are only logged by the buffer, so they should be validated before.
+     */
+    public void setPropertyDeferred(long accountId, String property, Object value) {
+        if (propertyWrites == null) {
+            setProperty(accountId, property, value);
+            return;
+        }
+        propertyWrites.submit(accountId + ":" + property, new PropertyUpdate(accountId, property, value));
+    }
+
+    /**
+     * Enables the write-behind buffer used by {@link #setPropertyDeferred(long, String, Object)}
+     */
+    public void enableWriteBehind(int batchSize, int capacity, long flushIntervalMillis) {
+        if (propertyWrites != null) {
+            return;
+        }
+        propertyWrites = new WriteBehindBuffer<>(tableName, this::writeProperties, batchSize, capacity, flushIntervalMillis);
+        sql.registerWriteBehindBuffer(propertyWrites);
+    }
+
+    public WriteBehindBuffer<String, PropertyUpdate> getPropertyWrites() {
+        return propertyWrites;
+    }
+
+    /**
+     * Drops the buffered properties of the account, waiting for a flush which is writing them
+     */
+    public void discardPendingProperties(long accountId) {
+        if (propertyWrites == null) {
+            return;
+        }
+        String keyPrefix = accountId + ":";
+        propertyWrites.discard(key -> key.startsWith(keyPrefix));
+    }
+
+    /**
+     * Writes the buffered updates with one jdbc batch per property
+     */
+    private void writeProperties(List<PropertyUpdate> updates) throws SQLException {
+        Map<String, List<PropertyUpdate>> updatesByProperty = new HashMap<>();
+        for (PropertyUpdate update : updates) {
+            updatesByProperty.computeIfAbsent(update.property, property -> new ArrayList<>()).add(update);
+        }
+        for (Map.Entry<String, List<PropertyUpdate>> entry : updatesByProperty.entrySet()) {
+            sql.batchUpdate(tableName, entry.getValue(), entry.getValue().size(), propertyUpdateMapper, entry.getKey() + " = ?", "account_id = ?");
+        }
+    }
+
+    public static class PropertyUpdate {
+        public final long accountId;
+        public final String property;
+        public final Object value;
+
+        public PropertyUpdate(long accountId, String property, Object value) {
+            this.accountId = accountId;
+            this.property = property;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return "PropertyUpdate[" + accountId + ", " + property + "]";
+        }
+    }
+
+    private static final ColumnMapper<PropertyUpdate> propertyUpdateMapper = new ColumnMapper<>() {
+        @Override
+        public Map<String, Object> mapColumns(PropertyUpdate update) {
+            // the value may be null, which Map.of does not allow
+            Map<String, Object> columns = new HashMap<>();
+            columns.put(update.property, update.value);
+            columns.put("account_id", update.accountId);
+            return columns;
+        }
+    };
+
     public ConcurrentHashMap<Long, Account> getAllAccountsById() {
         ConcurrentHashMap<Long, Account> accounts = new ConcurrentHashMap<>();
-        sql.executeQuery("SELECT * FROM " + tableName, new StatementCustomAction() {
-            @Override
-            public void onAfterExecute(PreparedStatement statement) throws SQLException {
-                ResultSet rs = statement.getResultSet();
-                while (rs.next()) {
-                    accounts.put(rs.getLong("account_id"), getColumnMapper().getObjectFromResultSetEntry(rs));
-                }
-            }
-        });
+        try (Stream<Account> stream = streamAllAccounts(SQL.DEFAULT_FETCH_SIZE)) {
+            stream.forEach(account -> accounts.put(account.accountId, account));
+        }
         return accounts;
     }
 
+    /**
+     * Streams all accounts through a forward-only cursor, the stream has to be closed to release the connection
+     */
+    public Stream<Account> streamAllAccounts(int fetchSize) {
+        return sql.streamQuery(columnMapper.getSelectStatement(tableName), getColumnMapper(), fetchSize);
+    }
+
     public Account getAccount(long accountId) {
         AtomicReference<Account> account = new AtomicReference<>();
-        sql.executeQuery("SELECT * FROM " + tableName + " WHERE account_id = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getAccount"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 ResultSet rs = statement.getResultSet();
@@ -279,9 +424,35 @@ public class AccountRepository extends Repository {
         return account.get();
     }
 
+    /**
+     * Returns the existing accounts of the given ids
+     */
+    public List<Account> getAccounts(Collection<Long> accountIds) {
+        String query = columnMapper.getSelectStatement(tableName) + " WHERE account_id IN (" + SQL.KEYS_PLACEHOLDER + ")";
+        return sql.queryByKeys(query, accountIds, columnMapper);
+    }
+
+    /**
+     * Returns the authentication relevant fields of the account or null if it does not exist
+     */
+    public AccountAuthView getAuthView(long accountId) {
+        AtomicReference<AccountAuthView> view = new AtomicReference<>();
+        sql.executeNamedQuery(statementName("getAuthView"), new StatementCustomAction() {
+            @Override
+            public void onAfterExecute(PreparedStatement statement) throws SQLException {
+                ResultSet rs = statement.getResultSet();
+                if (rs.next()) {
+                    view.set(authViewMapper.getObjectFromResultSetEntry(rs));
+                }
+            }
+        }, accountId);
+        return view.get();
+    }
+
     public boolean deleteAccount(long accountId) {
+        discardPendingProperties(accountId);
         AtomicBoolean deleted = new AtomicBoolean(false);
-        sql.executeQuery("DELETE FROM " + tableName + " WHERE account_id = ?", new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("deleteAccount"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
                 deleted.set(statement.getUpdateCount() > 0);
@@ -291,35 +462,55 @@ public class AccountRepository extends Repository {
     }
 
     private ColumnMapper<Account> getColumnMapper() {
-        return new ColumnMapper<Account>() {
-            @Override
-            public Account getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
-                return new Account(
-                        resultSet.getLong("account_id"),
-                        resultSet.getString("email"),
-                        resultSet.getObject("created_at", OffsetDateTime.class),
-                        resultSet.getObject("birthday", LocalDate.class),
-                        resultSet.getString("first_name"),
-                        resultSet.getString("last_name"),
-                        resultSet.getString("username"),
-                        resultSet.getString("phone_number"),
-                        resultSet.getString("nationality"),
-                        resultSet.getString("location"),
-                        Locale.forLanguageTag(resultSet.getString("locale")),
-                        Monetary.getCurrency(resultSet.getString("preferred_currency")),
-                        resultSet.getString("instagram_url"),
-                        resultSet.getString("twitter_url"),
-                        resultSet.getString("facebook_url"),
-                        resultSet.getString("linked_in_url"),
-                        resultSet.getString("website_url"),
-                        resultSet.getString("about_me"),
-                        resultSet.getString("profile_picture_url"),
-                        resultSet.getBoolean("is_private"),
-                        resultSet.getBoolean("is_locked"),
-                        resultSet.getBoolean("email_verified")
-                );
-            }
-        };
+        return columnMapper;
     }
 
+    private static final IndexedColumnMapper<AccountAuthView> authViewMapper = new IndexedColumnMapper<>(
+            "account_id", "email", "username", "is_locked", "email_verified", "email_verification_code_expiration") {
+        @Override
+        protected AccountAuthView map(ResultSet resultSet, int[] indexes) throws SQLException {
+            return new AccountAuthView(
+                    resultSet.getLong(indexes[0]),
+                    resultSet.getString(indexes[1]),
+                    resultSet.getString(indexes[2]),
+                    resultSet.getBoolean(indexes[3]),
+                    resultSet.getBoolean(indexes[4]),
+                    resultSet.getLong(indexes[5])
+            );
+        }
+    };
+
+    private static final IndexedColumnMapper<Account> columnMapper = new IndexedColumnMapper<>(
+            "account_id", "email", "created_at", "birthday", "first_name", "last_name", "username", "phone_number",
+            "nationality", "location", "locale", "preferred_currency", "instagram_url", "twitter_url", "facebook_url",
+            "linked_in_url", "website_url", "about_me", "profile_picture_url", "is_private", "is_locked", "email_verified") {
+        @Override
+        protected Account map(ResultSet resultSet, int[] indexes) throws SQLException {
+            return new Account(
+                    resultSet.getLong(indexes[0]),
+                    resultSet.getString(indexes[1]),
+                    resultSet.getObject(indexes[2], OffsetDateTime.class),
+                    resultSet.getObject(indexes[3], LocalDate.class),
+                    resultSet.getString(indexes[4]),
+                    resultSet.getString(indexes[5]),
+                    resultSet.getString(indexes[6]),
+                    resultSet.getString(indexes[7]),
+                    resultSet.getString(indexes[8]),
+                    resultSet.getString(indexes[9]),
+                    LookupTables.getLocale(resultSet.getString(indexes[10])),
+                    LookupTables.getCurrency(resultSet.getString(indexes[11])),
+                    resultSet.getString(indexes[12]),
+                    resultSet.getString(indexes[13]),
+                    resultSet.getString(indexes[14]),
+                    resultSet.getString(indexes[15]),
+                    resultSet.getString(indexes[16]),
+                    resultSet.getString(indexes[17]),
+                    resultSet.getString(indexes[18]),
+                    resultSet.getBoolean(indexes[19]),
+                    resultSet.getBoolean(indexes[20]),
+                    resultSet.getBoolean(indexes[21])
+            );
+        }
+    };
+
 }
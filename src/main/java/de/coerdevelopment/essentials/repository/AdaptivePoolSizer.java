@@ -0,0 +1,115 @@
+package de.coerdevelopment.essentials.repository;
+
+import de.coerdevelopment.essentials.CoerEssentials;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grows the maximum size of the connection pool while threads wait for connections and shrinks it again once the pool is mostly idle.
+ * The pool does not grow while the database itself is close to its connection limit, because more connections would not be served faster.
+ */
+public class AdaptivePoolSizer {
+
+    /**
+     * Amount of consecutive idle samples before the pool shrinks, so short pauses between bursts do not shrink it
+     */
+    private static final int SHRINK_AFTER_SAMPLES = 6;
+
+    private final SQL sql;
+    private final int lowerBound;
+    private final int upperBound;
+    private final long intervalMillis;
+    private final double waitThresholdMillis;
+    private final double saturationThreshold;
+    private ScheduledExecutorService scheduler;
+    private long lastAcquisitions;
+    private long lastAcquisitionNanos;
+    private int idleSamples;
+
+    /**
+     * @param waitThresholdMillis average connection acquisition time above which the pool grows
+     * @param saturationThreshold share of the connection limit of the database above which the pool does not grow
+     */
+    public AdaptivePoolSizer(SQL sql, int lowerBound, int upperBound, long intervalMillis, double waitThresholdMillis, double saturationThreshold) {
+        if (lowerBound <= 0 || upperBound < lowerBound) {
+            throw new IllegalArgumentException("Invalid pool size bounds: " + lowerBound + " - " + upperBound);
+        }
+        this.sql = sql;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.intervalMillis = intervalMillis;
+        this.waitThresholdMillis = waitThresholdMillis;
+        this.saturationThreshold = saturationThreshold;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("coer-pool-sizer").daemon().factory());
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                sample();
+            } catch (Exception e) {
+                CoerEssentials.getInstance().logWarning("Adaptive pool sizing failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Samples the pool and adjusts its maximum size
+     */
+    void sample() {
+        PoolMetrics metrics = sql.getPoolMetrics();
+        if (metrics == null) {
+            return;
+        }
+        // average acquisition time since the previous sample
+        long acquisitions = metrics.acquisitions - lastAcquisitions;
+        double recentWaitMillis = acquisitions > 0 ? (metrics.totalAcquisitionNanos - lastAcquisitionNanos) / 1_000_000d / acquisitions : 0;
+        lastAcquisitions = metrics.acquisitions;
+        lastAcquisitionNanos = metrics.totalAcquisitionNanos;
+
+        int maximumPoolSize = metrics.maximumPoolSize;
+        boolean starving = metrics.threadsAwaitingConnection > 0 || recentWaitMillis > waitThresholdMillis;
+        if (starving) {
+            idleSamples = 0;
+            CoerEssentials.getInstance().logWarning("Connection pool is starving: " + metrics);
+            if (maximumPoolSize >= upperBound) {
+                return;
+            }
+            double databaseUsage = sql.getDatabaseConnectionUsage();
+            if (databaseUsage >= saturationThreshold) {
+                CoerEssentials.getInstance().logWarning("Connection pool not grown, the database uses " + Math.round(databaseUsage * 100) + "% of its connections.");
+                return;
+            }
+            // grows by a quarter to react to bursts within a few samples
+            int grown = Math.min(upperBound, maximumPoolSize + Math.max(1, maximumPoolSize / 4));
+            resize(grown, metrics);
+            return;
+        }
+        if (metrics.getUtilization() <= 0.5 && maximumPoolSize > lowerBound) {
+            if (++idleSamples >= SHRINK_AFTER_SAMPLES) {
+                idleSamples = 0;
+                resize(Math.max(lowerBound, maximumPoolSize - 1), metrics);
+            }
+        } else {
+            idleSamples = 0;
+        }
+    }
+
+    private void resize(int maximumPoolSize, PoolMetrics metrics) {
+        sql.setMaximumPoolSize(maximumPoolSize);
+        CoerEssentials.getInstance().logInfo("Resized connection pool from " + metrics.maximumPoolSize + " to " + maximumPoolSize + " connections.");
+    }
+
+}
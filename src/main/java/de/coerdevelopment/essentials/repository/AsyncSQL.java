@@ -0,0 +1,137 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous facade for {@link SQL} which executes the statements on virtual threads.
+ * The amount of concurrently executed statements is bounded by the size of the connection pool,
+ * so callers waiting for a connection park a virtual thread instead of blocking a platform thread.
+ * The bound follows the pool when its size is changed at runtime, see {@link SQL#setMaximumPoolSize(int)}.
+ */
+public class AsyncSQL {
+
+    private final SQL sql;
+    private final ExecutorService executor;
+    private final ResizableSemaphore permits;
+    private int maxConcurrency;
+
+    AsyncSQL(SQL sql, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Max concurrency has to be greater than zero.");
+        }
+        this.sql = sql;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("coer-sql-async-", 0).factory());
+        this.permits = new ResizableSemaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Changes the amount of concurrently executed statements. A smaller limit lets the running statements finish,
+     * new statements wait until the running ones have fallen below it.
+     */
+    synchronized void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Max concurrency has to be greater than zero.");
+        }
+        int delta = maxConcurrency - this.maxConcurrency;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Runs the given task on a virtual thread as soon as a connection permit is available.
+     * The routing and the statement context of the caller are carried over, so the task keeps its deadline and can be cancelled.
+     */
+    public <T> CompletableFuture<T> supply(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        SQL.RoutingContext routingContext = sql.captureRoutingContext();
+        StatementContext statementContext = sql.getCurrentContext();
+        executor.execute(() -> {
+            sql.restoreRoutingContext(routingContext);
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+            try {
+                future.complete(statementContext != null ? sql.withContext(statementContext, task) : task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                permits.release();
+            }
+        });
+        return future;
+    }
+
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> executeQuery(String query, Object... params) {
+        return run(() -> sql.executeQuery(query, params));
+    }
+
+    public CompletableFuture<Void> executeNamedQuery(String name, Object... params) {
+        return run(() -> sql.executeNamedQuery(name, params));
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> executeQueryReturningFields(String query, Object... params) {
+        return supply(() -> sql.executeQueryReturningFields(query, params));
+    }
+
+    public CompletableFuture<Map<String, Object>> executeQueryReturningFieldsSingle(String query, Object... params) {
+        return supply(() -> sql.executeQueryReturningFieldsSingle(query, params));
+    }
+
+    /**
+     * Executes the query and maps all rows with the given column mapper
+     */
+    public <T> CompletableFuture<List<T>> query(String query, ColumnMapper<T> columnMapper, Object... params) {
+        return supply(() -> {
+            try (Stream<T> stream = sql.streamQuery(query, columnMapper, SQL.DEFAULT_FETCH_SIZE, params)) {
+                return stream.toList();
+            }
+        });
+    }
+
+    /**
+     * Returns the amount of statements which could be started right now without waiting for a permit
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public synchronized int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes a batch of buffered objects to the database, see {@link WriteBehindBuffer}
+ */
+@FunctionalInterface
+public interface BatchWriter<T> {
+
+    void write(List<T> batch) throws SQLException;
+
+}
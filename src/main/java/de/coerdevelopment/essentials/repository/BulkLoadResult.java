@@ -0,0 +1,31 @@
+package de.coerdevelopment.essentials.repository;
+
+public class BulkLoadResult {
+
+    public final String tableName;
+    public final long rows;
+    public final long durationMillis;
+    /**
+     * True if the rows have been loaded by the native bulk path of the database (e.g. COPY on PostgreSQL)
+     */
+    public final boolean nativeBulkLoad;
+
+    public BulkLoadResult(String tableName, long rows, long durationMillis, boolean nativeBulkLoad) {
+        this.tableName = tableName;
+        this.rows = rows;
+        this.durationMillis = durationMillis;
+        this.nativeBulkLoad = nativeBulkLoad;
+    }
+
+    public double getRowsPerSecond() {
+        if (durationMillis <= 0) {
+            return rows;
+        }
+        return rows * 1000d / durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Loaded " + rows + " rows into " + tableName + " in " + durationMillis + "ms (" + Math.round(getRowsPerSecond()) + " rows/s)";
+    }
+}
@@ -0,0 +1,173 @@
+package de.coerdevelopment.essentials.repository;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.util.PGobject;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Loads large amounts of rows through the native bulk path of the database.
+ * On PostgreSQL the rows are streamed as CSV through COPY FROM STDIN,
+ * on MySQL and MariaDB they are sent as a jdbc batch which is rewritten to multi-row inserts by the driver.
+ */
+class BulkLoader {
+
+    /**
+     * Size of the buffer which is collected before it is sent to the COPY stream
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final SQL sql;
+
+    BulkLoader(SQL sql) {
+        this.sql = sql;
+    }
+
+    <T> BulkLoadResult load(String tableName, List<String> columns, Iterable<T> objects, ColumnWriter<T> columnWriter, int batchSize) throws SQLException {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("At least one column has to be provided.");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size has to be greater than zero.");
+        }
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        long poolWait = 0;
+        long rows = -1;
+        boolean nativeBulkLoad = sql.isPostgreSQLDialect();
+        try (Connection connection = sql.getConnection()) {
+            poolWait = System.nanoTime() - startNanos;
+            if (nativeBulkLoad) {
+                rows = copyIn(connection, tableName, columns, objects, columnWriter);
+            } else {
+                rows = batchInsert(connection, tableName, columns, objects, columnWriter, batchSize);
+            }
+        } finally {
+            String template = (nativeBulkLoad ? "COPY " : "BULK INSERT ") + tableName + " (" + String.join(", ", columns) + ")";
+            sql.getQueryMetrics().record(template, 0, poolWait, System.nanoTime() - startNanos, rows, rows < 0);
+        }
+        sql.markWrite();
+        return new BulkLoadResult(tableName, rows, System.currentTimeMillis() - start, nativeBulkLoad);
+    }
+
+    private <T> long copyIn(Connection connection, String tableName, List<String> columns, Iterable<T> objects, ColumnWriter<T> columnWriter) throws SQLException {
+        String query = "COPY " + tableName + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(query);
+        try {
+            Object[] row = new Object[columns.size()];
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+            for (T obj : objects) {
+                Arrays.fill(row, null);
+                columnWriter.writeColumns(obj, row);
+                appendCsvRow(buffer, row);
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    writeToCopy(copyIn, buffer);
+                }
+            }
+            if (!buffer.isEmpty()) {
+                writeToCopy(copyIn, buffer);
+            }
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    private <T> long batchInsert(Connection connection, String tableName, List<String> columns, Iterable<T> objects, ColumnWriter<T> columnWriter, int batchSize) throws SQLException {
+        String placeholders = columns.stream().map(c -> "?").collect(Collectors.joining(", "));
+        String query = "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES (" + placeholders + ")";
+        boolean initialAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        long rows = 0;
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            Object[] row = new Object[columns.size()];
+            int pending = 0;
+            for (T obj : objects) {
+                Arrays.fill(row, null);
+                columnWriter.writeColumns(obj, row);
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+                if (++pending >= batchSize) {
+                    statement.executeBatch();
+                    rows += pending;
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+                rows += pending;
+            }
+            connection.commit();
+        } catch (SQLException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(initialAutoCommit);
+        }
+        return rows;
+    }
+
+    /**
+     * Appends the row in the csv format of the COPY command, an unquoted empty value is read as NULL
+     */
+    static void appendCsvRow(StringBuilder buffer, Object[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            String value = toCopyValue(row[i]);
+            if (value == null) {
+                continue;
+            }
+            buffer.append('"');
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '"') {
+                    buffer.append('"');
+                }
+                buffer.append(c);
+            }
+            buffer.append('"');
+        }
+        buffer.append('\n');
+    }
+
+    private static String toCopyValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof PGobject pgObject) {
+            return pgObject.getValue();
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        if (value instanceof byte[] bytes) {
+            StringBuilder hex = new StringBuilder(2 + bytes.length * 2).append("\\x");
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        return value.toString();
+    }
+
+}
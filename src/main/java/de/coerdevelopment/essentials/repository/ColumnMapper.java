@@ -12,4 +12,12 @@ public class ColumnMapper<T> {
     public T getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
         return null;
     }
+
+    /**
+     * Returns the mapper used for all rows of the given result set.
+     * Mappers which can prepare the reading of a result set once return a mapper bound to it, this mapper by default.
+     */
+    public ColumnMapper<T> bind(ResultSet resultSet) throws SQLException {
+        return this;
+    }
 }
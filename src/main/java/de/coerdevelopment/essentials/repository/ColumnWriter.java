@@ -0,0 +1,15 @@
+package de.coerdevelopment.essentials.repository;
+
+/**
+ * Writes the column values of an object directly into a reusable row array,
+ * used for bulk loads to avoid the allocation of a map per object like {@link ColumnMapper#mapColumns(Object)} does.
+ */
+@FunctionalInterface
+public interface ColumnWriter<T> {
+
+    /**
+     * Writes the values of the object into the row, in the order of the columns passed to the bulk load
+     */
+    void writeColumns(T obj, Object[] row);
+
+}
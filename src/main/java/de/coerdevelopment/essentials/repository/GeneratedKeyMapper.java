@@ -0,0 +1,14 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.util.Map;
+
+/**
+ * Creates an entity from its generated key and the inserted values, used if the dialect can not return the inserted row.
+ * Columns which were not inserted have to be filled with the defaults of the table.
+ */
+@FunctionalInterface
+public interface GeneratedKeyMapper<T> {
+
+    T map(long generatedKey, Map<String, Object> values);
+
+}
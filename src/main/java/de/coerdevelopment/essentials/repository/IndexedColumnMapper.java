@@ -0,0 +1,104 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column mapper which resolves the indexes of its columns once per result set shape
+ * instead of looking up every column by its name on every row.
+ * The resolved indexes are passed to {@link #map(ResultSet, int[])} in the order of the columns given to the constructor,
+ * columns which are missing in the result set get the index 0.
+ * Queries reading many rows should map them with {@link #bind(ResultSet)}, which resolves the indexes once per result set.
+ * The columns also describe a projection, {@link #getSelectStatement(String)} selects only the columns the mapper reads.
+ */
+public abstract class IndexedColumnMapper<T> extends ColumnMapper<T> {
+
+    private final String[] columns;
+    private final ConcurrentHashMap<String, int[]> indexesByShape;
+
+    protected IndexedColumnMapper(String... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("At least one column has to be provided.");
+        }
+        this.columns = columns;
+        this.indexesByShape = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public final T getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
+        return map(resultSet, resolveIndexes(resultSet));
+    }
+
+    /**
+     * Returns a mapper which reads the rows of the given result set with the indexes resolved once.
+     * The mapper belongs to the caller of the query, so concurrent queries of the shared mapper do not interfere.
+     */
+    @Override
+    public final ColumnMapper<T> bind(ResultSet resultSet) throws SQLException {
+        final int[] indexes = resolveIndexes(resultSet);
+        return new ColumnMapper<>() {
+            @Override
+            public T getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
+                return map(resultSet, indexes);
+            }
+
+            @Override
+            public Map<String, Object> mapColumns(T obj) {
+                return IndexedColumnMapper.this.mapColumns(obj);
+            }
+        };
+    }
+
+    /**
+     * Maps the current row of the result set, the column columns[i] can be read with indexes[i]
+     */
+    protected abstract T map(ResultSet resultSet, int[] indexes) throws SQLException;
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Returns the comma separated columns of the mapper, e.g. to be used instead of {@code *} in a select statement
+     */
+    public String getColumnList() {
+        return String.join(", ", columns);
+    }
+
+    /**
+     * Returns a select statement reading only the columns of the mapper, a where clause can be appended
+     */
+    public String getSelectStatement(String tableName) {
+        return "SELECT " + getColumnList() + " FROM " + tableName;
+    }
+
+    private int[] resolveIndexes(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1).toLowerCase(Locale.ROOT);
+        }
+        String shape = String.join(",", labels);
+        int[] indexes = indexesByShape.get(shape);
+        if (indexes == null) {
+            indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                String column = columns[i].toLowerCase(Locale.ROOT);
+                for (int j = 0; j < labels.length; j++) {
+                    if (labels[j].equals(column)) {
+                        indexes[i] = j + 1;
+                        break;
+                    }
+                }
+            }
+            indexesByShape.putIfAbsent(shape, indexes);
+        }
+        return indexes;
+    }
+
+}
@@ -24,10 +24,32 @@ public class LocalFileStorageRepository extends Repository{
 
     private LocalFileStorageRepository() {
         super("local_file_storage_metadata");
+        registerStatement("getFilesByAccountId", columnMapper.getSelectStatement(tableName) + " WHERE account_id = ?");
+        registerStatement("getFileMetadataByFileName", columnMapper.getSelectStatement(tableName) + " WHERE account_id = ? AND file_name = ?");
+        registerStatement("getFileMetadataByUUID", columnMapper.getSelectStatement(tableName) + " WHERE stored_file_name LIKE ?");
+        registerStatement("deleteMetadata", "DELETE FROM " + tableName + " WHERE account_id = ? AND file_name = ?");
     }
 
     @Override
     public void createTable() {
+        SQLTable table = getTable();
+        sql.executeQuery(table.getCreateTableStatement());
+
+        sql.executeQuery(table.getMultiUniqueStatement("uq_idx_fileName_accountId", "file_name", "account_id"));
+
+        sql.executeQuery(table.getCreateIndexStatement("idx_fileName_accountId", "file_name", "account_id"));
+    }
+
+    @Override
+    public List<Migration> getMigrations() {
+        SQLTable table = getTable();
+        return List.of(new Migration(1, "Create file metadata")
+                .createTable(table)
+                .execute(table.getMultiUniqueStatement("uq_idx_fileName_accountId", "file_name", "account_id"))
+                .execute(table.getCreateIndexStatement("idx_fileName_accountId", "file_name", "account_id")));
+    }
+
+    private SQLTable getTable() {
         SQLTable table = new SQLTable(tableName);
         table.addAutoKey("file_id");
         table.addString("file_name", 256, false);
@@ -37,11 +59,7 @@ public class LocalFileStorageRepository extends Repository{
         table.addLong("file_size_bytes", false);
         table.addForeignKey("account_id", CoerEssentials.getInstance().getAccountModule().tableName, "account_id", false, false);
         table.addDateTimeWithTimezone("created_at", false);
-        sql.executeQuery(table.getCreateTableStatement());
-
-        sql.executeQuery(table.getMultiUniqueStatement("uq_idx_fileName_accountId", "file_name", "account_id"));
-
-        sql.executeQuery(table.getCreateIndexStatement("idx_fileName_accountId", "file_name", "account_id"));
+        return table;
     }
 
     public void insertFileMetadata(List<FileMetadata> files) throws SQLException {
@@ -50,13 +68,13 @@ public class LocalFileStorageRepository extends Repository{
 
     public List<FileMetadata> getFilesByAccountId(long accountId) {
         List<FileMetadata> files = new ArrayList<>();
-        String query = "SELECT * FROM " + tableName + " WHERE account_id = ?";
-        sql.executeQuery(query, new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getFilesByAccountId"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
-                ResultSet rs = statement.executeQuery();
+                ResultSet rs = statement.getResultSet();
+                ColumnMapper<FileMetadata> rowMapper = columnMapper.bind(rs);
                 while (rs.next()) {
-                    files.add(columnMapper.getObjectFromResultSetEntry(rs));
+                    files.add(rowMapper.getObjectFromResultSetEntry(rs));
                 }
             }
         }, accountId);
@@ -65,11 +83,10 @@ public class LocalFileStorageRepository extends Repository{
 
     public FileMetadata getFileMetadataByFileName(long accountId, String fileName) {
         List<FileMetadata> files = new ArrayList<>();
-        String query = "SELECT * FROM " + tableName + " WHERE account_id = ? AND file_name = ?";
-        sql.executeQuery(query, new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getFileMetadataByFileName"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
-                ResultSet rs = statement.executeQuery();
+                ResultSet rs = statement.getResultSet();
                 if (rs.next()) {
                     files.add(columnMapper.getObjectFromResultSetEntry(rs));
                 }
@@ -79,30 +96,16 @@ public class LocalFileStorageRepository extends Repository{
     }
 
     public List<FileMetadata> getFileMetadataByAccounts(List<Long> accountIds, String fileName) {
-        List<FileMetadata> files = new ArrayList<>();
-        if (accountIds.isEmpty()) {
-            return files;
-        }
-        String query = "SELECT * FROM " + tableName + " WHERE account_id IN (" + SQLUtil.longListToSearchTerm(accountIds) + ") AND file_name = ?";
-        sql.executeQuery(query, new StatementCustomAction() {
-            @Override
-            public void onAfterExecute(PreparedStatement statement) throws SQLException {
-                ResultSet rs = statement.executeQuery();
-                while (rs.next()) {
-                    files.add(columnMapper.getObjectFromResultSetEntry(rs));
-                }
-            }
-        }, fileName);
-        return files;
+        String query = columnMapper.getSelectStatement(tableName) + " WHERE account_id IN (" + SQL.KEYS_PLACEHOLDER + ") AND file_name = ?";
+        return sql.queryByKeys(query, accountIds, columnMapper, fileName);
     }
 
     public FileMetadata getFileMetadataByUUID(String uuid) {
         List<FileMetadata> files = new ArrayList<>();
-        String query = "SELECT * FROM " + tableName + " WHERE stored_file_name LIKE ?";
-        sql.executeQuery(query, new StatementCustomAction() {
+        sql.executeNamedQuery(statementName("getFileMetadataByUUID"), new StatementCustomAction() {
             @Override
             public void onAfterExecute(PreparedStatement statement) throws SQLException {
-                ResultSet rs = statement.executeQuery();
+                ResultSet rs = statement.getResultSet();
                 if (rs.next()) {
                     files.add(columnMapper.getObjectFromResultSetEntry(rs));
                 }
@@ -112,11 +115,11 @@ public class LocalFileStorageRepository extends Repository{
     }
 
     public void deleteMetadata(long accountId, String fileName) {
-        String query = "DELETE FROM " + tableName + " WHERE account_id = ? AND file_name = ?";
-        sql.executeQuery(query, accountId, fileName);
+        sql.executeNamedQuery(statementName("deleteMetadata"), accountId, fileName);
     }
 
-    private static ColumnMapper<FileMetadata> columnMapper = new ColumnMapper<>() {
+    private static final IndexedColumnMapper<FileMetadata> columnMapper = new IndexedColumnMapper<>("file_id", "file_name", "storage_path",
+            "stored_file_name", "mime_type", "file_size_bytes", "account_id", "created_at") {
         @Override
         public Map<String, Object> mapColumns(FileMetadata obj) {
             return Map.of(
@@ -131,15 +134,15 @@ public class LocalFileStorageRepository extends Repository{
         }
 
         @Override
-        public FileMetadata getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
-            long fileId = resultSet.getLong("file_id");
-            String fileName = resultSet.getString("file_name");
-            String storagePath = resultSet.getString("storage_path");
-            String storedFileName = resultSet.getString("stored_file_name");
-            String mimeType = resultSet.getString("mime_type");
-            long fileSizeBytes = resultSet.getLong("file_size_bytes");
-            long accountId = resultSet.getLong("account_id");
-            OffsetDateTime createdAt = resultSet.getObject("created_at", OffsetDateTime.class);
+        protected FileMetadata map(ResultSet resultSet, int[] indexes) throws SQLException {
+            long fileId = resultSet.getLong(indexes[0]);
+            String fileName = resultSet.getString(indexes[1]);
+            String storagePath = resultSet.getString(indexes[2]);
+            String storedFileName = resultSet.getString(indexes[3]);
+            String mimeType = resultSet.getString(indexes[4]);
+            long fileSizeBytes = resultSet.getLong(indexes[5]);
+            long accountId = resultSet.getLong(indexes[6]);
+            OffsetDateTime createdAt = resultSet.getObject(indexes[7], OffsetDateTime.class);
             return new FileMetadata(fileId, fileName, storagePath, storedFileName, mimeType, fileSizeBytes, accountId, createdAt);
         }
     };
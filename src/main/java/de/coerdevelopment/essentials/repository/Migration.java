@@ -0,0 +1,105 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A versioned change of the schema of a table, applied once by the {@link SchemaMigrator}.
+ * The statements are generated for the dialect of the connection when the migration is applied.
+ */
+public class Migration {
+
+    private final int version;
+    private final String description;
+    private final List<Function<SQLDialect, String>> statements;
+    private boolean online;
+
+    public Migration(int version, String description) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("Version has to be greater than zero.");
+        }
+        this.version = version;
+        this.description = description;
+        this.statements = new ArrayList<>();
+    }
+
+    public Migration createTable(SQLTable table) {
+        statements.add(table::getCreateTableStatement);
+        return this;
+    }
+
+    public Migration addColumn(SQLTable table, SQLEntity entity) {
+        statements.add(dialect -> table.getAddColumnStatement(dialect, entity));
+        return this;
+    }
+
+    /**
+     * Creates the index without blocking writes to the table,
+     * CONCURRENTLY on PostgreSQL and ALGORITHM=INPLACE LOCK=NONE on MySQL/MariaDB.
+     * Indexes of partitioned tables are created with a plain statement inside the transaction of the migration.
+     */
+    public Migration createIndex(SQLTable table, String indexName, String... columnName) {
+        statements.add(dialect -> table.getOnlineIndexStatement(dialect, indexName, false, columnName));
+        online |= !table.isPartitioned();
+        return this;
+    }
+
+    public Migration createUniqueIndex(SQLTable table, String indexName, String... columnName) {
+        statements.add(dialect -> table.getOnlineIndexStatement(dialect, indexName, true, columnName));
+        online |= !table.isPartitioned();
+        return this;
+    }
+
+    public Migration execute(String statement) {
+        statements.add(dialect -> statement);
+        return this;
+    }
+
+    public Migration execute(Function<SQLDialect, String> statement) {
+        statements.add(statement);
+        return this;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns true if the migration builds indexes online, which cannot run inside a transaction on PostgreSQL
+     */
+    public boolean isOnline() {
+        return online;
+    }
+
+    public List<String> getStatements(SQLDialect dialect) {
+        return statements.stream().map(statement -> statement.apply(dialect)).toList();
+    }
+
+    /**
+     * Returns the SHA-256 checksum of the statements for the given dialect
+     */
+    public String getChecksum(SQLDialect dialect) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.join("\n", getStatements(dialect)).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "V" + version + " " + description;
+    }
+
+}
@@ -0,0 +1,52 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Range covered by a single partition of a time-range partitioned table
+ */
+public enum PartitionInterval {
+    DAY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+    MONTH(DateTimeFormatter.ofPattern("yyyyMM"));
+
+    private final DateTimeFormatter suffixFormat;
+
+    PartitionInterval(DateTimeFormatter suffixFormat) {
+        this.suffixFormat = suffixFormat;
+    }
+
+    /**
+     * Returns the lower bound of the partition containing the date
+     */
+    public LocalDate floor(LocalDate date) {
+        return this == DAY ? date : date.withDayOfMonth(1);
+    }
+
+    public LocalDate plus(LocalDate lowerBound, long intervals) {
+        return this == DAY ? lowerBound.plusDays(intervals) : lowerBound.plusMonths(intervals);
+    }
+
+    /**
+     * Returns the name suffix of the partition starting at the lower bound, e.g. p202610
+     */
+    public String getSuffix(LocalDate lowerBound) {
+        return "p" + suffixFormat.format(lowerBound);
+    }
+
+    /**
+     * Returns the lower bound of the partition with the given suffix or null if the suffix was not created by this interval
+     */
+    public LocalDate parseSuffix(String suffix) {
+        String value = suffix.startsWith("p") ? suffix.substring(1) : suffix;
+        try {
+            if (this == DAY) {
+                return LocalDate.parse(value, suffixFormat);
+            }
+            return LocalDate.parse(value + "01", DAY.suffixFormat);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+}
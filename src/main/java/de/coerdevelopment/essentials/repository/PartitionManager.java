@@ -0,0 +1,157 @@
+package de.coerdevelopment.essentials.repository;
+
+import de.coerdevelopment.essentials.CoerEssentials;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates future partitions of time-range partitioned tables ahead of time and removes expired ones.
+ * Removing a partition only changes metadata, so retention does not need to delete rows.
+ */
+public class PartitionManager {
+
+    /**
+     * Catch-all partition of MySQL/MariaDB tables which is split when new partitions are created
+     */
+    public static final String MAX_PARTITION = "p_max";
+
+    private final SQL sql;
+
+    public PartitionManager(SQL sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Creates the partitions of the current and the next intervals and removes the expired ones
+     * @return the amount of created and removed partitions
+     */
+    public MaintenanceResult maintain(String tableName, PartitionSettings settings) {
+        MaintenanceResult result = new MaintenanceResult(tableName);
+        if (sql.isH2Dialect()) {
+            return result;
+        }
+        try (Connection connection = sql.getConnection()) {
+            List<String> partitions = getPartitions(connection, tableName);
+            if (!isPartitionedTable(connection, tableName, partitions)) {
+                CoerEssentials.getInstance().logWarning("Table " + tableName + " is configured for partitioning but was created without partitions.");
+                return result;
+            }
+            PartitionInterval interval = settings.interval;
+            LocalDate current = interval.floor(LocalDate.now());
+            if (sql.isPostgreSQLDialect() && !partitions.contains(tableName + "_default")) {
+                execute(connection, "CREATE TABLE IF NOT EXISTS " + tableName + "_default PARTITION OF " + tableName + " DEFAULT");
+            }
+            for (int i = 0; i <= settings.premake; i++) {
+                LocalDate lowerBound = interval.plus(current, i);
+                String partition = getPartitionName(tableName, interval.getSuffix(lowerBound));
+                if (!partitions.contains(partition)) {
+                    createPartition(connection, tableName, partition, lowerBound, interval.plus(lowerBound, 1));
+                    result.created++;
+                }
+            }
+            if (settings.retention > 0) {
+                LocalDate oldestKept = interval.plus(current, -settings.retention);
+                for (String partition : partitions) {
+                    LocalDate lowerBound = interval.parseSuffix(partition.substring(partition.lastIndexOf('_') + 1));
+                    if (lowerBound != null && lowerBound.isBefore(oldestKept) && removePartition(connection, tableName, partition, settings.dropExpired)) {
+                        result.removed++;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            CoerEssentials.getInstance().logError("Unable to maintain the partitions of " + tableName + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    private String getPartitionName(String tableName, String suffix) {
+        // postgres partitions are tables of their own, mysql partitions are named within the table
+        return sql.isPostgreSQLDialect() ? tableName + "_" + suffix : suffix;
+    }
+
+    private void createPartition(Connection connection, String tableName, String partition, LocalDate from, LocalDate to) throws SQLException {
+        if (sql.isPostgreSQLDialect()) {
+            execute(connection, "CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + tableName
+                    + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        } else {
+            execute(connection, "ALTER TABLE " + tableName + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO (PARTITION " + partition
+                    + " VALUES LESS THAN ('" + to + "'), PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE))");
+        }
+    }
+
+    private boolean removePartition(Connection connection, String tableName, String partition, boolean drop) throws SQLException {
+        if (sql.isPostgreSQLDialect()) {
+            execute(connection, "ALTER TABLE " + tableName + " DETACH PARTITION " + partition);
+            if (drop) {
+                execute(connection, "DROP TABLE " + partition);
+            }
+            return true;
+        }
+        if (!drop) {
+            // mysql partitions cannot be detached without exchanging them with a table of the same structure
+            return false;
+        }
+        execute(connection, "ALTER TABLE " + tableName + " DROP PARTITION " + partition);
+        return true;
+    }
+
+    /**
+     * Returns the names of the partitions of the table, empty if the table is not partitioned
+     */
+    private List<String> getPartitions(Connection connection, String tableName) throws SQLException {
+        String query = sql.isPostgreSQLDialect()
+                ? "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent "
+                    + "WHERE p.relname = ? AND p.relkind = 'p'"
+                : "SELECT partition_name FROM information_schema.partitions WHERE table_schema = DATABASE() AND table_name = ? AND partition_name IS NOT NULL";
+        List<String> partitions = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, tableName);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    partitions.add(rs.getString(1));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private boolean isPartitionedTable(Connection connection, String tableName, List<String> partitions) throws SQLException {
+        if (!sql.isPostgreSQLDialect()) {
+            return !partitions.isEmpty();
+        }
+        // a freshly created postgres table has no partitions yet
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM pg_class WHERE relname = ? AND relkind = 'p'")) {
+            statement.setString(1, tableName);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private void execute(Connection connection, String query) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(query);
+        }
+        CoerEssentials.getInstance().logInfo(query);
+    }
+
+    public static class MaintenanceResult {
+
+        public final String tableName;
+        public int created;
+        public int removed;
+
+        private MaintenanceResult(String tableName) {
+            this.tableName = tableName;
+        }
+
+        @Override
+        public String toString() {
+            return tableName + ": " + created + " partitions created, " + removed + " removed";
+        }
+    }
+
+}
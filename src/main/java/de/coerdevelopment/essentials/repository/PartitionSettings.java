@@ -0,0 +1,32 @@
+package de.coerdevelopment.essentials.repository;
+
+/**
+ * Settings of a time-range partitioned table, used by the {@link PartitionManager}
+ */
+public class PartitionSettings {
+
+    public final PartitionInterval interval;
+    /**
+     * Amount of future partitions which are created ahead of time
+     */
+    public final int premake;
+    /**
+     * Amount of past partitions which are kept besides the current one, 0 keeps all partitions
+     */
+    public final int retention;
+    /**
+     * True if expired partitions are dropped, otherwise they are only detached from the table
+     */
+    public final boolean dropExpired;
+
+    public PartitionSettings(PartitionInterval interval, int premake, int retention, boolean dropExpired) {
+        if (premake < 1) {
+            throw new IllegalArgumentException("At least one partition has to be created ahead of time.");
+        }
+        this.interval = interval;
+        this.premake = premake;
+        this.retention = retention;
+        this.dropExpired = dropExpired;
+    }
+
+}
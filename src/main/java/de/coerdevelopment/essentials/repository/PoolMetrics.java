@@ -0,0 +1,58 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of the state of the connection pool of the primary database
+ */
+public class PoolMetrics {
+
+    public final int activeConnections;
+    public final int idleConnections;
+    public final int totalConnections;
+    public final int threadsAwaitingConnection;
+    public final int maximumPoolSize;
+    public final int minimumIdle;
+    public final long acquisitions;
+    public final long totalAcquisitionNanos;
+    public final long maxAcquisitionNanos;
+
+    public PoolMetrics(int activeConnections, int idleConnections, int totalConnections, int threadsAwaitingConnection, int maximumPoolSize,
+                       int minimumIdle, long acquisitions, long totalAcquisitionNanos, long maxAcquisitionNanos) {
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.totalConnections = totalConnections;
+        this.threadsAwaitingConnection = threadsAwaitingConnection;
+        this.maximumPoolSize = maximumPoolSize;
+        this.minimumIdle = minimumIdle;
+        this.acquisitions = acquisitions;
+        this.totalAcquisitionNanos = totalAcquisitionNanos;
+        this.maxAcquisitionNanos = maxAcquisitionNanos;
+    }
+
+    /**
+     * Returns the average time it took to check out a connection from the pool
+     */
+    public double getAverageAcquisitionMillis() {
+        return acquisitions == 0 ? 0 : totalAcquisitionNanos / 1_000_000d / acquisitions;
+    }
+
+    public double getMaxAcquisitionMillis() {
+        return maxAcquisitionNanos / 1_000_000d;
+    }
+
+    /**
+     * Returns the share of the maximum pool size which is currently in use
+     */
+    public double getUtilization() {
+        return maximumPoolSize == 0 ? 0 : (double) activeConnections / maximumPoolSize;
+    }
+
+    @Override
+    public String toString() {
+        return "Pool [active=" + activeConnections + ", idle=" + idleConnections + ", total=" + totalConnections + ", waiting=" + threadsAwaitingConnection
+                + ", max=" + maximumPoolSize + ", acquisitions=" + acquisitions + ", avgAcquisition=" + String.format(Locale.ROOT, "%.2f", getAverageAcquisitionMillis())
+                + "ms, maxAcquisition=" + String.format(Locale.ROOT, "%.2f", getMaxAcquisitionMillis()) + "ms]";
+    }
+
+}
@@ -0,0 +1,116 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry for named statements which are registered once and then executed by their name.
+ * The prepared statements are cached per physical connection by the jdbc driver, this registry keeps track of
+ * which statements have already been prepared on which connection to expose the hit and miss counters.
+ */
+public class PreparedStatementRegistry {
+
+    private final ConcurrentHashMap<String, String> statements;
+    private final ConcurrentHashMap<String, Long> timeouts;
+    private final Map<Connection, Set<String>> preparedStatementsPerConnection;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    public PreparedStatementRegistry() {
+        this.statements = new ConcurrentHashMap<>();
+        this.timeouts = new ConcurrentHashMap<>();
+        this.preparedStatementsPerConnection = Collections.synchronizedMap(new WeakHashMap<>());
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Registers the query under the given name, an already registered name will be overwritten
+     */
+    public void register(String name, String query) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Statement name cannot be null or empty.");
+        }
+        if (query == null || query.isEmpty()) {
+            throw new IllegalArgumentException("Statement query cannot be null or empty.");
+        }
+        statements.put(name, query);
+    }
+
+    /**
+     * Registers the query with its own statement timeout, a timeout of 0 uses the default timeout of the facade
+     */
+    public void register(String name, String query, long timeoutMillis) {
+        register(name, query);
+        setTimeoutMillis(name, timeoutMillis);
+    }
+
+    public void setTimeoutMillis(String name, long timeoutMillis) {
+        if (timeoutMillis > 0) {
+            timeouts.put(name, timeoutMillis);
+        } else {
+            timeouts.remove(name);
+        }
+    }
+
+    /**
+     * Returns the statement timeout of the named statement or 0 if it uses the default timeout
+     */
+    public long getTimeoutMillis(String name) {
+        return timeouts.getOrDefault(name, 0L);
+    }
+
+    public String getQuery(String name) {
+        String query = statements.get(name);
+        if (query == null) {
+            throw new IllegalArgumentException("No statement registered with name '" + name + "'.");
+        }
+        return query;
+    }
+
+    public boolean isRegistered(String name) {
+        return statements.containsKey(name);
+    }
+
+    public Set<String> getStatementNames() {
+        return Collections.unmodifiableSet(statements.keySet());
+    }
+
+    /**
+     * Records the usage of the named statement on the physical connection behind the given (pooled) connection
+     */
+    public void recordUsage(Connection connection, String name) throws SQLException {
+        Connection physicalConnection = connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : connection;
+        Set<String> prepared = preparedStatementsPerConnection.computeIfAbsent(physicalConnection, c -> ConcurrentHashMap.newKeySet());
+        if (prepared.add(name)) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the ratio of executions which could reuse an already prepared statement
+     */
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+}
@@ -0,0 +1,259 @@
+package de.coerdevelopment.essentials.repository;
+
+import de.coerdevelopment.essentials.CoerEssentials;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects latency histograms, row counts, error, timeout and cancellation counters per statement template
+ * and logs statements which exceed the slow query threshold.
+ */
+public class QueryMetrics {
+
+    /**
+     * Upper bounds of the latency histogram buckets in milliseconds, the last bucket collects everything above
+     */
+    public static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    /**
+     * Template under which statements are collected once the maximum amount of templates has been reached
+     */
+    public static final String OTHER_TEMPLATE = "<other>";
+
+    private static final int MAX_TEMPLATES = 1000;
+
+    private final ConcurrentHashMap<String, QueryStatistics> statistics;
+    private volatile long slowQueryThresholdMillis;
+
+    public QueryMetrics() {
+        this.statistics = new ConcurrentHashMap<>();
+        this.slowQueryThresholdMillis = 1000;
+    }
+
+    /**
+     * Records a single execution of the statement template
+     * @param rows amount of rows read or written, -1 if unknown
+     */
+    public void record(String template, int parameterCount, long poolWaitNanos, long elapsedNanos, long rows, boolean error) {
+        QueryStatistics stats = getOrCreate(template);
+        stats.record(poolWaitNanos, elapsedNanos, rows, error);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (slowQueryThresholdMillis > 0 && elapsedMillis >= slowQueryThresholdMillis) {
+            CoerEssentials.getInstance().logWarning("Slow query (" + elapsedMillis + "ms, pool wait " + TimeUnit.NANOSECONDS.toMillis(poolWaitNanos)
+                    + "ms, " + parameterCount + " parameters" + (rows >= 0 ? ", " + rows + " rows" : "") + "): " + template);
+        }
+    }
+
+    /**
+     * Records that an execution of the template was aborted by its timeout or cancelled, in addition to {@link #record}
+     */
+    public void recordInterruption(String template, boolean cancelled) {
+        QueryStatistics stats = getOrCreate(template);
+        if (cancelled) {
+            stats.cancellations.increment();
+        } else {
+            stats.timeouts.increment();
+            CoerEssentials.getInstance().logWarning("Query timed out: " + template);
+        }
+    }
+
+    /**
+     * Adds rows to a template whose rows are only known after the execution has been recorded
+     */
+    public void addRows(String template, long rows) {
+        getOrCreate(template).rows.add(rows);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of every template
+     */
+    public Map<String, QueryStatistics> getStatistics() {
+        return new HashMap<>(statistics);
+    }
+
+    public QueryStatistics getStatistics(String template) {
+        return statistics.get(template);
+    }
+
+    /**
+     * Returns the templates which spent the most time in the database
+     */
+    public List<QueryStatistics> getSlowestQueries(int limit) {
+        return statistics.values().stream()
+                .sorted(Comparator.comparingLong(QueryStatistics::getTotalNanos).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Returns the amount of timed out executions over all templates
+     */
+    public long getTimeouts() {
+        return statistics.values().stream().mapToLong(QueryStatistics::getTimeouts).sum();
+    }
+
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+    }
+
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdMillis;
+    }
+
+    public void reset() {
+        statistics.clear();
+    }
+
+    private QueryStatistics getOrCreate(String template) {
+        QueryStatistics stats = statistics.get(template);
+        if (stats != null) {
+            return stats;
+        }
+        // statements with inlined values would create a new template per execution
+        if (statistics.size() >= MAX_TEMPLATES) {
+            template = OTHER_TEMPLATE;
+        }
+        return statistics.computeIfAbsent(template, QueryStatistics::new);
+    }
+
+    public static class QueryStatistics {
+
+        private final String template;
+        private final LongAdder count;
+        private final LongAdder errors;
+        private final LongAdder timeouts;
+        private final LongAdder cancellations;
+        private final LongAdder rows;
+        private final LongAdder totalNanos;
+        private final LongAdder totalPoolWaitNanos;
+        private final AtomicLong maxNanos;
+        private final LongAdder[] histogram;
+
+        private QueryStatistics(String template) {
+            this.template = template;
+            this.count = new LongAdder();
+            this.errors = new LongAdder();
+            this.timeouts = new LongAdder();
+            this.cancellations = new LongAdder();
+            this.rows = new LongAdder();
+            this.totalNanos = new LongAdder();
+            this.totalPoolWaitNanos = new LongAdder();
+            this.maxNanos = new AtomicLong();
+            this.histogram = new LongAdder[BUCKET_BOUNDS_MILLIS.length + 1];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(long poolWaitNanos, long elapsedNanos, long rows, boolean error) {
+            count.increment();
+            if (error) {
+                errors.increment();
+            }
+            if (rows > 0) {
+                this.rows.add(rows);
+            }
+            totalNanos.add(elapsedNanos);
+            totalPoolWaitNanos.add(poolWaitNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            histogram[getBucket(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))].increment();
+        }
+
+        private static int getBucket(long millis) {
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                if (millis <= BUCKET_BOUNDS_MILLIS[i]) {
+                    return i;
+                }
+            }
+            return BUCKET_BOUNDS_MILLIS.length;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * Returns the amount of executions aborted by a statement timeout or deadline, they are also counted as errors
+         */
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        public long getCancellations() {
+            return cancellations.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public double getAverageMillis() {
+            long count = getCount();
+            return count == 0 ? 0 : getTotalNanos() / 1_000_000d / count;
+        }
+
+        public double getAveragePoolWaitMillis() {
+            long count = getCount();
+            return count == 0 ? 0 : totalPoolWaitNanos.sum() / 1_000_000d / count;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1_000_000d;
+        }
+
+        /**
+         * Returns the amount of executions per histogram bucket, see {@link #BUCKET_BOUNDS_MILLIS}
+         */
+        public long[] getHistogram() {
+            long[] counts = new long[histogram.length];
+            for (int i = 0; i < histogram.length; i++) {
+                counts[i] = histogram[i].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * Estimates the given percentile (0-100) by the upper bound of the histogram bucket it falls into
+         */
+        public long getPercentileMillis(double percentile) {
+            long[] counts = getHistogram();
+            long total = Arrays.stream(counts).sum();
+            if (total == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(total * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= threshold) {
+                    return i < BUCKET_BOUNDS_MILLIS.length ? BUCKET_BOUNDS_MILLIS[i] : (long) Math.ceil(getMaxMillis());
+                }
+            }
+            return (long) Math.ceil(getMaxMillis());
+        }
+
+        @Override
+        public String toString() {
+            return template + " [count=" + getCount() + ", errors=" + getErrors() + ", timeouts=" + getTimeouts() + ", rows=" + getRows()
+                    + ", avg=" + String.format(Locale.ROOT, "%.2f", getAverageMillis()) + "ms, p99=" + getPercentileMillis(99)
+                    + "ms, max=" + String.format(Locale.ROOT, "%.2f", getMaxMillis()) + "ms]";
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+package de.coerdevelopment.essentials.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import de.coerdevelopment.essentials.CoerEssentials;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read replicas of the primary database which are used round-robin for read-only statements.
+ * A background health check ejects replicas which fail to validate a connection or lag behind the primary,
+ * and takes them back into rotation once they pass it again.
+ * A replica which is unable to provide a connection to a reader is ejected for a while as well,
+ * the short connection timeout of the replica pools bounds how long a reader waits before it falls back to the primary.
+ */
+public class ReplicaSet {
+
+    private final List<Replica> replicas;
+    private final AtomicInteger next;
+    private long ejectionMillis;
+    private long connectionTimeoutMillis;
+    private long healthCheckIntervalMillis;
+    private long maxLagMillis;
+    private LagProbe lagProbe;
+    private ScheduledExecutorService healthChecker;
+
+    public ReplicaSet() {
+        this.replicas = new CopyOnWriteArrayList<>();
+        this.next = new AtomicInteger();
+        this.ejectionMillis = 30000;
+        this.connectionTimeoutMillis = 1000;
+        this.healthCheckIntervalMillis = 5000;
+    }
+
+    public void add(String host, int port) {
+        replicas.add(new Replica(host, port));
+    }
+
+    /**
+     * Closes and removes all replicas
+     */
+    public void clear() {
+        close();
+        replicas.clear();
+    }
+
+    public boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    public List<Replica> getReplicas() {
+        return List.copyOf(replicas);
+    }
+
+    public void setEjectionMillis(long ejectionMillis) {
+        this.ejectionMillis = ejectionMillis;
+    }
+
+    /**
+     * Sets how long a reader waits for a connection of a replica before the replica is ejected, takes effect with the next connect
+     */
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    /**
+     * Sets the interval of the health check, 0 disables it. Takes effect with the next connect.
+     */
+    public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    }
+
+    /**
+     * Replicas whose replication lag reaches the given time are ejected by the health check, 0 disables the lag check
+     */
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    void setLagProbe(LagProbe lagProbe) {
+        this.lagProbe = lagProbe;
+    }
+
+    /**
+     * Assigns the pool to the replica, an ejected replica is taken into rotation once the ejection time has passed
+     */
+    void connect(Replica replica, HikariDataSource dataSource, boolean ejected) {
+        replica.connect(dataSource);
+        if (ejected) {
+            replica.eject(ejectionMillis);
+        }
+    }
+
+    /**
+     * Returns a connection of the next healthy replica or null if no replica is available
+     */
+    Connection getConnection() {
+        int size = replicas.size();
+        for (int attempt = 0; attempt < size; attempt++) {
+            Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), size));
+            if (!replica.isHealthy()) {
+                continue;
+            }
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException exception) {
+                replica.eject(ejectionMillis);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts checking the health of the replicas in the background
+     */
+    synchronized void startHealthCheck() {
+        if (healthChecker != null || replicas.isEmpty() || healthCheckIntervalMillis <= 0) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("coer-replica-health").daemon().factory());
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Validates a connection of every replica and measures its lag, failing replicas are ejected until they pass again
+     */
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource == null || replica.dataSource.isClosed()) {
+                continue;
+            }
+            String failure = getHealthFailure(replica);
+            if (failure == null) {
+                if (replica.failing) {
+                    CoerEssentials.getInstance().logInfo("Replica " + replica + " passed the health check and is taken back into rotation.");
+                }
+                replica.readmit();
+            } else {
+                if (!replica.failing) {
+                    CoerEssentials.getInstance().logWarning("Replica " + replica + " failed the health check and is ejected: " + failure);
+                }
+                replica.fail();
+            }
+        }
+    }
+
+    /**
+     * Returns the reason why the replica is unhealthy or null if it is healthy
+     */
+    private String getHealthFailure(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection()) {
+            if (!connection.isValid((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(connectionTimeoutMillis)))) {
+                return "connection is not valid";
+            }
+            LagProbe probe = lagProbe;
+            if (maxLagMillis > 0 && probe != null) {
+                long lagMillis = probe.getLagMillis(connection);
+                if (lagMillis < 0) {
+                    return "replication is not running";
+                }
+                if (lagMillis >= maxLagMillis) {
+                    return "replication lags " + lagMillis + "ms behind";
+                }
+            }
+            return null;
+        } catch (SQLException exception) {
+            return exception.getMessage();
+        }
+    }
+
+    void close() {
+        synchronized (this) {
+            if (healthChecker != null) {
+                healthChecker.shutdownNow();
+                healthChecker = null;
+            }
+        }
+        for (Replica replica : replicas) {
+            replica.close();
+        }
+    }
+
+    /**
+     * Measures the replication lag of a replica on one of its connections
+     */
+    interface LagProbe {
+        /**
+         * @return the lag in milliseconds or -1 if the replication is not running
+         */
+        long getLagMillis(Connection connection) throws SQLException;
+    }
+
+    public static class Replica {
+
+        public final String host;
+        public final int port;
+        private volatile HikariDataSource dataSource;
+        private volatile long ejectedUntil;
+        private volatile boolean failing;
+
+        private Replica(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        void connect(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+            this.ejectedUntil = 0;
+            this.failing = false;
+        }
+
+        void eject(long ejectionMillis) {
+            this.ejectedUntil = System.currentTimeMillis() + ejectionMillis;
+        }
+
+        /**
+         * Ejects the replica until it passes the health check again
+         */
+        void fail() {
+            this.failing = true;
+        }
+
+        void readmit() {
+            this.failing = false;
+            this.ejectedUntil = 0;
+        }
+
+        /**
+         * Returns true if the replica is connected, passes the health check and is not ejected
+         */
+        public boolean isHealthy() {
+            return dataSource != null && !dataSource.isClosed() && !failing && System.currentTimeMillis() >= ejectedUntil;
+        }
+
+        private void close() {
+            if (dataSource != null && !dataSource.isClosed()) {
+                dataSource.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+}
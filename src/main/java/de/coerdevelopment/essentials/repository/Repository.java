@@ -1,5 +1,7 @@
 package de.coerdevelopment.essentials.repository;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,6 +11,7 @@ public abstract class Repository {
 
     public String tableName;
     protected SQL sql;
+    protected long statementTimeoutMillis;
 
     public Repository(String tableName) {
         this.tableName = tableName;
@@ -18,9 +21,72 @@ public abstract class Repository {
 
     public abstract void createTable();
 
+    /**
+     * Returns the migrations of the table in ascending order of their versions, the first one usually creates the table
+     */
+    public List<Migration> getMigrations() {
+        return List.of();
+    }
+
+    /**
+     * Brings the table to the version of its latest migration, tables without migrations are created through {@link #createTable()}
+     */
+    public void migrate() {
+        List<Migration> migrations = getMigrations();
+        if (migrations.isEmpty()) {
+            createTable();
+            return;
+        }
+        new SchemaMigrator(sql).migrate(tableName, migrations);
+        PartitionSettings partitionSettings = sql.getPartitionSettings(tableName);
+        if (partitionSettings != null) {
+            // rows are only accepted once the partition of the current interval exists
+            new PartitionManager(sql).maintain(tableName, partitionSettings);
+        }
+    }
+
+    /**
+     * Partitions the table by the given timestamp column if partitioning is enabled for it
+     */
+    protected void applyPartitioning(SQLTable table, String column) {
+        if (sql.getPartitionSettings(tableName) != null) {
+            table.setRangePartition(column);
+        }
+    }
+
+    /**
+     * Registers a named statement for this repository, the name is prefixed with the table name
+     */
+    protected void registerStatement(String name, String query) {
+        sql.registerStatement(statementName(name), query, statementTimeoutMillis);
+    }
+
+    /**
+     * Sets the statement timeout of all named statements of this repository, 0 uses the default statement timeout
+     */
+    public void setStatementTimeoutMillis(long statementTimeoutMillis) {
+        this.statementTimeoutMillis = statementTimeoutMillis;
+        String prefix = statementName("");
+        PreparedStatementRegistry registry = sql.getStatementRegistry();
+        for (String name : registry.getStatementNames()) {
+            if (name.startsWith(prefix)) {
+                registry.setTimeoutMillis(name, statementTimeoutMillis);
+            }
+        }
+    }
+
+    /**
+     * Returns the full name of a statement registered by this repository
+     */
+    protected String statementName(String name) {
+        return tableName + "." + name;
+    }
+
     public void dropTable() {
-        try {
-            sql.getConnection().prepareStatement("DROP TABLE " + tableName + " CASCADE").execute();
+        try (Connection connection = sql.getConnection();
+             PreparedStatement statement = connection.prepareStatement("DROP TABLE " + tableName + " CASCADE")) {
+            statement.execute();
+            sql.markWrite();
         } catch (Exception e) {
             if (e.getMessage().contains("Unknown table")) {
                 // table does not exist -> ignore
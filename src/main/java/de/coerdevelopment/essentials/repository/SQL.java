@@ -1,15 +1,49 @@
 package de.coerdevelopment.essentials.repository;
 
 import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.pool.HikariPool;
+import de.coerdevelopment.essentials.CoerEssentials;
 
 import java.sql.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SQL {
 
+    /**
+     * Amount of rows fetched per round trip when streaming a result without an explicit fetch size
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * Placeholder of the key list in queries passed to {@link #queryByKeys(String, Collection, ColumnMapper, Object...)}
+     */
+    public static final String KEYS_PLACEHOLDER = ":keys";
+
+    private static final Pattern KEYS_PREDICATE = Pattern.compile("(?i)\\bIN\\s*\\(\\s*" + KEYS_PLACEHOLDER + "\\s*\\)");
+
+    /**
+     * Sizes of the IN lists used on dialects without array parameters, the keys are padded to the next size
+     * so only a handful of statement texts exist per query
+     */
+    private static final int[] KEY_BUCKET_SIZES = {1, 4, 16, 64, 256};
+
     private static SQL instance;
 
     public static SQL getSQL() {
@@ -43,8 +77,28 @@ public class SQL {
     private int port;
     private int minPoolSize;
     private int maxPoolSize;
+    private int statementCacheSize = 256;
+    private boolean serverSidePrepare = true;
 
     private HikariDataSource dataSource;
+    private final ReplicaSet replicaSet = new ReplicaSet();
+    private long readYourWritesWindowMillis = 2000;
+    private final ThreadLocal<Long> lastWriteAt = new ThreadLocal<>();
+    private final ThreadLocal<Integer> primaryPins = ThreadLocal.withInitial(() -> 0);
+    private final ThreadLocal<SQLTransaction> boundTransaction = new ThreadLocal<>();
+    private final ThreadLocal<StatementContext> boundContext = new ThreadLocal<>();
+    private long statementTimeoutMillis;
+    private long serverStatementTimeoutMillis;
+    private AsyncSQL async;
+    private final PreparedStatementRegistry statementRegistry = new PreparedStatementRegistry();
+    private final QueryMetrics queryMetrics = new QueryMetrics();
+    private final Map<String, PartitionSettings> partitionSettings = new ConcurrentHashMap<>();
+    private final LongAdder connectionAcquisitions = new LongAdder();
+    private final LongAdder connectionAcquisitionNanos = new LongAdder();
+    private final AtomicLong maxConnectionAcquisitionNanos = new AtomicLong();
+    private AdaptivePoolSizer poolSizer;
+    private Connection monitoringConnection;
+    private final List<WriteBehindBuffer<?, ?>> writeBehindBuffers = new CopyOnWriteArrayList<>();
 
     private SQL(String host, String username, String password, String database, int port, String type, int minPoolSize, int maxPoolSize) {
         this.host = host;
@@ -61,18 +115,145 @@ public class SQL {
         if (isPoolConnected()) {
             return;
         }
+        this.dataSource = new HikariDataSource(createPoolConfig(getURL()));
+        try {
+            for (ReplicaSet.Replica replica : replicaSet.getReplicas()) {
+                connectReplica(replica);
+            }
+            replicaSet.setLagProbe(getReplicationLagProbe());
+            replicaSet.startHealthCheck();
+            if (poolSizer != null) {
+                poolSizer.start();
+            }
+        } catch (RuntimeException exception) {
+            replicaSet.close();
+            dataSource.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Connects the pool of the replica, a replica which is unavailable at startup is started ejected
+     * instead of failing the connection to the primary
+     */
+    private void connectReplica(ReplicaSet.Replica replica) {
+        HikariConfig config = createPoolConfig(getURL(replica.host, replica.port));
+        // readers fall back to the primary, so they should not wait the default 30 seconds for a dead replica
+        config.setConnectionTimeout(replicaSet.getConnectionTimeoutMillis());
+        config.setValidationTimeout(Math.min(config.getValidationTimeout(), replicaSet.getConnectionTimeoutMillis()));
+        try {
+            replicaSet.connect(replica, new HikariDataSource(config), false);
+        } catch (HikariPool.PoolInitializationException exception) {
+            CoerEssentials.getInstance().logWarning("Replica " + replica + " is unavailable, it is ejected until it can be reached: " + exception.getMessage());
+            // the pool keeps trying to open connections in the background instead of failing on creation
+            config.setInitializationFailTimeout(-1);
+            replicaSet.connect(replica, new HikariDataSource(config), true);
+        }
+    }
+
+    /**
+     * Returns the probe measuring the replication lag of a replica of the current dialect or null if it has none
+     */
+    private ReplicaSet.LagProbe getReplicationLagProbe() {
+        return switch (dialect) {
+            case POSTGRESQL -> connection -> {
+                // a replica which has replayed everything it received is not lagging, even if the primary was idle for a while
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+                             + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, -1) END")) {
+                    return rs.next() ? rs.getLong(1) : -1;
+                }
+            };
+            case MYSQL -> connection -> getSecondsBehind(connection, "SHOW REPLICA STATUS", "Seconds_Behind_Source");
+            case MARIADB -> connection -> getSecondsBehind(connection, "SHOW SLAVE STATUS", "Seconds_Behind_Master");
+            case H2 -> null;
+        };
+    }
+
+    private static long getSecondsBehind(Connection connection, String query, String column) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            if (!rs.next()) {
+                return -1;
+            }
+            long seconds = rs.getLong(column);
+            // null while the replication threads are stopped
+            return rs.wasNull() ? -1 : seconds * 1000;
+        }
+    }
+
+    private HikariConfig createPoolConfig(String url) {
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(getURL());
+        config.setJdbcUrl(url);
         config.setUsername(username);
         config.setPassword(password);
         config.setMinimumIdle(minPoolSize);
         config.setMaximumPoolSize(maxPoolSize);
         config.setLeakDetectionThreshold(120000);
+        configureStatementCache(config);
+        configureServerStatementTimeout(config);
+        return config;
+    }
+
+    /**
+     * Sets a server side limit for every statement of the session, which also aborts statements the client can not cancel
+     */
+    private void configureServerStatementTimeout(HikariConfig config) {
+        if (serverStatementTimeoutMillis <= 0) {
+            return;
+        }
+        switch (dialect) {
+            case POSTGRESQL -> config.addDataSourceProperty("options", "-c statement_timeout=" + serverStatementTimeoutMillis);
+            // only applies to read-only selects
+            case MYSQL -> config.addDataSourceProperty("sessionVariables", "max_execution_time=" + serverStatementTimeoutMillis);
+            case MARIADB -> config.setConnectionInitSql("SET SESSION max_statement_time=" + serverStatementTimeoutMillis / 1000d);
+            case H2 -> config.setConnectionInitSql("SET QUERY_TIMEOUT " + serverStatementTimeoutMillis);
+        }
+    }
 
-        this.dataSource = new HikariDataSource(config);
+    /**
+     * Enables the per connection statement cache of the jdbc driver for the current dialect
+     */
+    private void configureStatementCache(HikariConfig config) {
+        switch (dialect) {
+            case POSTGRESQL -> {
+                // a threshold of 1 switches to a named server side statement on the first execution, 0 disables it
+                config.addDataSourceProperty("prepareThreshold", serverSidePrepare ? "1" : "0");
+                config.addDataSourceProperty("preparedStatementCacheQueries", String.valueOf(statementCacheSize));
+            }
+            case MYSQL -> {
+                config.addDataSourceProperty("useServerPrepStmts", String.valueOf(serverSidePrepare));
+                config.addDataSourceProperty("cachePrepStmts", "true");
+                config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(statementCacheSize));
+                config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+                // lets the driver rewrite jdbc batches to multi-row inserts, used by the bulk load fallback
+                config.addDataSourceProperty("rewriteBatchedStatements", "true");
+            }
+            case MARIADB -> {
+                config.addDataSourceProperty("useServerPrepStmts", String.valueOf(serverSidePrepare));
+                config.addDataSourceProperty("cachePrepStmts", "true");
+                config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(statementCacheSize));
+                config.addDataSourceProperty("useBulkStmts", "true");
+            }
+        }
     }
 
     public void disconnect() throws SQLException {
+        for (WriteBehindBuffer<?, ?> buffer : writeBehindBuffers) {
+            buffer.close();
+        }
+        writeBehindBuffers.clear();
+        synchronized (this) {
+            if (async != null) {
+                async.shutdown();
+                async = null;
+            }
+        }
+        if (poolSizer != null) {
+            poolSizer.stop();
+        }
+        closeMonitoringConnection();
+        replicaSet.close();
         if (isPoolConnected()) {
             dataSource.close();
         }
@@ -111,31 +292,433 @@ public class SQL {
         return -1;
     }
 
+    /**
+     * Returns a pooled connection of the primary or the connection bound by the unit of work of the current thread
+     */
     public Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        SQLTransaction transaction = boundTransaction.get();
+        if (transaction != null) {
+            return transaction.getConnection();
+        }
+        return acquireConnection();
+    }
+
+    /**
+     * Checks out a connection of the primary pool and records how long it took
+     */
+    private Connection acquireConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection();
+        long elapsed = System.nanoTime() - start;
+        connectionAcquisitions.increment();
+        connectionAcquisitionNanos.add(elapsed);
+        maxConnectionAcquisitionNanos.accumulateAndGet(elapsed, Math::max);
+        return connection;
+    }
+
+    /**
+     * Returns the current state of the connection pool of the primary or null if it is not connected
+     */
+    public PoolMetrics getPoolMetrics() {
+        if (!isPoolConnected()) {
+            return null;
+        }
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return new PoolMetrics(pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(), pool.getThreadsAwaitingConnection(),
+                dataSource.getMaximumPoolSize(), dataSource.getMinimumIdle(),
+                connectionAcquisitions.sum(), connectionAcquisitionNanos.sum(), maxConnectionAcquisitionNanos.get());
+    }
+
+    /**
+     * Changes the maximum size of the running connection pool of the primary and the concurrency of the asynchronous facade
+     */
+    public synchronized void setMaximumPoolSize(int maximumPoolSize) {
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        if (config.getMinimumIdle() > maximumPoolSize) {
+            config.setMinimumIdle(maximumPoolSize);
+        }
+        config.setMaximumPoolSize(maximumPoolSize);
+        if (async != null) {
+            async.setMaxConcurrency(maximumPoolSize);
+        }
+    }
+
+    /**
+     * Returns the share of the connection limit of the database which is in use by all clients, -1 if it cannot be determined.
+     * The value is read on a dedicated connection outside the pool, so it is available while the pool is starving.
+     */
+    public synchronized double getDatabaseConnectionUsage() {
+        String query = switch (dialect) {
+            case POSTGRESQL -> "SELECT COUNT(*) * 1.0 / current_setting('max_connections')::int FROM pg_stat_activity";
+            case MYSQL -> "SELECT VARIABLE_VALUE * 1.0 / @@max_connections FROM performance_schema.global_status WHERE VARIABLE_NAME = 'Threads_connected'";
+            case MARIADB -> "SELECT VARIABLE_VALUE * 1.0 / @@max_connections FROM information_schema.global_status WHERE VARIABLE_NAME = 'THREADS_CONNECTED'";
+            case H2 -> null;
+        };
+        if (query == null) {
+            return -1;
+        }
+        try {
+            if (monitoringConnection == null || monitoringConnection.isClosed()) {
+                monitoringConnection = DriverManager.getConnection(getURL(), username, password);
+            }
+            try (PreparedStatement statement = monitoringConnection.prepareStatement(query)) {
+                statement.setQueryTimeout(5);
+                try (ResultSet rs = statement.executeQuery()) {
+                    return rs.next() ? rs.getDouble(1) : -1;
+                }
+            }
+        } catch (SQLException e) {
+            // reconnects on the next call
+            closeMonitoringConnection();
+            return -1;
+        }
+    }
+
+    private synchronized void closeMonitoringConnection() {
+        if (monitoringConnection == null) {
+            return;
+        }
+        try {
+            monitoringConnection.close();
+        } catch (SQLException ignored) {
+        }
+        monitoringConnection = null;
+    }
+
+    /**
+     * Resizes the pool of the primary by the given sizer, it is started with the next connect
+     */
+    public void setAdaptivePoolSizer(AdaptivePoolSizer poolSizer) {
+        if (this.poolSizer != null) {
+            this.poolSizer.stop();
+        }
+        this.poolSizer = poolSizer;
+    }
+
+    /**
+     * Registers a buffer whose pending writes are flushed before the pools are closed
+     */
+    public void registerWriteBehindBuffer(WriteBehindBuffer<?, ?> buffer) {
+        writeBehindBuffers.add(buffer);
+    }
+
+    public List<WriteBehindBuffer<?, ?>> getWriteBehindBuffers() {
+        return List.copyOf(writeBehindBuffers);
+    }
+
+    /**
+     * Returns a connection for read-only statements.
+     * The connection is taken from a healthy replica, unless there are none or the reads of the current thread are pinned to the primary
+     * because they run inside {@link #onPrimary(Callable)}, inside a unit of work or shortly after a write of the same thread.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (boundTransaction.get() == null && !replicaSet.isEmpty() && !isReadPinnedToPrimary()) {
+            Connection connection = replicaSet.getConnection();
+            if (connection != null) {
+                return connection;
+            }
+        }
+        return getConnection();
+    }
+
+    /**
+     * Runs the task with all reads of the current thread routed to the primary
+     */
+    public <T> T onPrimary(Callable<T> task) throws Exception {
+        primaryPins.set(primaryPins.get() + 1);
+        try {
+            return task.call();
+        } finally {
+            primaryPins.set(primaryPins.get() - 1);
+        }
+    }
+
+    /**
+     * Marks that the current thread has written to the primary,
+     * its reads are routed to the primary during the read-your-writes window so they see the write even if the replicas lag behind.
+     * Statements executed through this class mark their writes automatically.
+     */
+    public void markWrite() {
+        lastWriteAt.set(System.currentTimeMillis());
+    }
+
+    private boolean isReadPinnedToPrimary() {
+        if (primaryPins.get() > 0) {
+            return true;
+        }
+        Long lastWrite = lastWriteAt.get();
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesWindowMillis;
+    }
+
+    /**
+     * Captures the read routing state of the current thread, so it can be restored on the thread which executes an asynchronous task
+     */
+    RoutingContext captureRoutingContext() {
+        return new RoutingContext(lastWriteAt.get(), primaryPins.get());
+    }
+
+    void restoreRoutingContext(RoutingContext context) {
+        lastWriteAt.set(context.lastWriteAt());
+        primaryPins.set(context.primaryPins());
+    }
+
+    record RoutingContext(Long lastWriteAt, int primaryPins) {
+    }
+
+    /**
+     * Returns true if the query only reads data and can therefore be executed on a replica
+     */
+    public static boolean isReadOnlyQuery(String query) {
+        String trimmed = query.stripLeading();
+        if (!trimmed.regionMatches(true, 0, "SELECT", 0, 6)) {
+            return false;
+        }
+        String upperCase = trimmed.toUpperCase(Locale.ROOT);
+        return !upperCase.contains(" FOR UPDATE") && !upperCase.contains(" FOR SHARE") && !upperCase.contains("NEXTVAL(")
+                && !upperCase.contains(" FINAL TABLE");
+    }
+
+    /**
+     * Runs the work in a transaction on a single connection of the primary which is bound to the current thread.
+     * All statements executed through this class on the current thread use the bound connection.
+     * The transaction is committed when the work completes and rolled back if it throws or a statement failed.
+     * Nested calls join the surrounding transaction, statements started through {@link #async()} do not take part.
+     */
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        SQLTransaction transaction = boundTransaction.get();
+        if (transaction == null) {
+            return withBoundConnection(work, true);
+        }
+        if (transaction.isTransactional()) {
+            return execute(work, transaction);
+        }
+        return executeInTransaction(work, transaction);
+    }
+
+    /**
+     * Runs the work with a single connection of the primary which is bound to the current thread,
+     * so consecutive statements do not check out a connection each. Every statement is committed on its own.
+     */
+    public <T> T withConnection(UnitOfWork<T> work) throws SQLException {
+        SQLTransaction transaction = boundTransaction.get();
+        if (transaction != null) {
+            return execute(work, transaction);
+        }
+        return withBoundConnection(work, false);
+    }
+
+    /**
+     * Returns the unit of work bound to the current thread or null
+     */
+    public SQLTransaction getCurrentTransaction() {
+        return boundTransaction.get();
+    }
+
+    /**
+     * Runs the task with the given deadline for all statements it executes on the current thread
+     */
+    public <T> T withTimeout(Duration timeout, Callable<T> task) throws Exception {
+        return withContext(StatementContext.withTimeout(timeout), task);
+    }
+
+    /**
+     * Runs the task with the given context bound to the current thread.
+     * The statements executed by the task get the remaining time of the context as timeout and can be cancelled through it,
+     * a nested context can only shorten the deadline of the enclosing one.
+     */
+    public <T> T withContext(StatementContext context, Callable<T> task) throws Exception {
+        StatementContext enclosing = boundContext.get();
+        // the given context may be shared, so it is combined with the enclosing one in a new child instead of being linked to it
+        boundContext.set(enclosing == null || enclosing == context ? context : context.nestedIn(enclosing));
+        try {
+            return task.call();
+        } finally {
+            if (enclosing != null) {
+                boundContext.set(enclosing);
+            } else {
+                boundContext.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the statement context bound to the current thread or null
+     */
+    public StatementContext getCurrentContext() {
+        return boundContext.get();
+    }
+
+    /**
+     * Applies the timeout of the statement and registers it in the bound context so it can be cancelled
+     * @param timeoutMillis timeout of the statement, 0 uses the default statement timeout
+     */
+    private void beginStatement(Statement statement, long timeoutMillis) throws SQLException {
+        long timeout = timeoutMillis > 0 ? timeoutMillis : statementTimeoutMillis;
+        StatementContext context = boundContext.get();
+        if (context != null) {
+            context.begin(statement);
+            long remaining = context.getRemainingMillis();
+            if (remaining != Long.MAX_VALUE) {
+                timeout = timeout > 0 ? Math.min(timeout, remaining) : remaining;
+            }
+        }
+        if (timeout > 0) {
+            // the jdbc timeout has a resolution of seconds
+            statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, Math.max(1, (timeout + 999) / 1000)));
+        }
+    }
+
+    private void endStatement(Statement statement) {
+        StatementContext context = boundContext.get();
+        if (context != null && statement != null) {
+            context.end(statement);
+        }
+    }
+
+    /**
+     * Records the exception as timeout or cancellation if the statement was aborted
+     */
+    private void recordInterruption(String template, SQLException exception) {
+        if (isInterruption(exception)) {
+            StatementContext context = boundContext.get();
+            queryMetrics.recordInterruption(template, context != null && context.isCancelled());
+        }
+    }
+
+    /**
+     * Returns true if the statement was aborted by a timeout or a cancel request
+     */
+    public static boolean isInterruption(SQLException exception) {
+        String state = exception.getSQLState();
+        // 57014 is query_canceled on postgres and h2, 70100 the interruption of mysql and mariadb
+        return exception instanceof SQLTimeoutException || "57014".equals(state) || "70100".equals(state);
+    }
+
+    private <T> T withBoundConnection(UnitOfWork<T> work, boolean transactional) throws SQLException {
+        try (Connection connection = acquireConnection()) {
+            SQLTransaction transaction = new SQLTransaction(connection);
+            boundTransaction.set(transaction);
+            try {
+                return transactional ? executeInTransaction(work, transaction) : execute(work, transaction);
+            } finally {
+                boundTransaction.remove();
+            }
+        }
+    }
+
+    private <T> T executeInTransaction(UnitOfWork<T> work, SQLTransaction transaction) throws SQLException {
+        Connection connection = transaction.getPhysicalConnection();
+        boolean initialAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        transaction.begin();
+        try {
+            T result = execute(work, transaction);
+            if (transaction.isRollbackOnly()) {
+                connection.rollback();
+            } else {
+                connection.commit();
+                markWrite();
+            }
+            return result;
+        } catch (SQLException | RuntimeException | Error exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            transaction.end();
+            connection.setAutoCommit(initialAutoCommit);
+        }
+    }
+
+    private <T> T execute(UnitOfWork<T> work, SQLTransaction transaction) throws SQLException {
+        try {
+            return work.execute(transaction);
+        } catch (SQLException | RuntimeException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Returns the asynchronous facade which executes statements on virtual threads,
+     * bounded by the maximum size of the connection pool
+     */
+    public synchronized AsyncSQL async() {
+        if (async == null) {
+            // the pool may have been resized since the connect
+            async = new AsyncSQL(this, dataSource != null ? dataSource.getMaximumPoolSize() : maxPoolSize);
+        }
+        return async;
     }
 
 
     public PreparedStatement executeQuery(String query, Object... params) {
-        return executeQueryWithParameters(query, false, null, params);
+        return executeQueryWithParameters(query, null, false, null, params);
     }
 
     public PreparedStatement executeQuery(String query, StatementCustomAction customAction, Object... params) {
-        return executeQueryWithParameters(query, false, customAction, params);
+        return executeQueryWithParameters(query, null, false, customAction, params);
     }
 
     public PreparedStatement executeQueryReturningKeys(String query, Object... params) {
-        return executeQueryWithParameters(query, true, null, params);
+        return executeQueryWithParameters(query, null, true, null, params);
     }
 
     public PreparedStatement executeQueryReturningKeys(String query,StatementCustomAction customAction, Object... params) {
-        return executeQueryWithParameters(query, true, customAction, params);
+        return executeQueryWithParameters(query, null, true, customAction, params);
+    }
+
+    /**
+     * Registers a statement which can be executed by its name afterwards.
+     * Named statements are prepared once per pooled connection and reused by the statement cache of the driver.
+     */
+    public void registerStatement(String name, String query) {
+        statementRegistry.register(name, query);
+    }
+
+    /**
+     * Registers a named statement with its own statement timeout, a timeout of 0 uses the default statement timeout
+     */
+    public void registerStatement(String name, String query, long timeoutMillis) {
+        statementRegistry.register(name, query, timeoutMillis);
+    }
+
+    public PreparedStatement executeNamedQuery(String name, Object... params) {
+        return executeQueryWithParameters(statementRegistry.getQuery(name), name, false, null, params);
     }
 
-    private PreparedStatement executeQueryWithParameters(String query, boolean returnGeneratedKeys, StatementCustomAction customAction, Object... params) {
+    public PreparedStatement executeNamedQuery(String name, StatementCustomAction customAction, Object... params) {
+        return executeQueryWithParameters(statementRegistry.getQuery(name), name, false, customAction, params);
+    }
+
+    public PreparedStatement executeNamedQueryReturningKeys(String name, StatementCustomAction customAction, Object... params) {
+        return executeQueryWithParameters(statementRegistry.getQuery(name), name, true, customAction, params);
+    }
+
+    public PreparedStatementRegistry getStatementRegistry() {
+        return statementRegistry;
+    }
+
+    /**
+     * Returns the latency, row and error statistics of the executed statements
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    private PreparedStatement executeQueryWithParameters(String query, String statementName, boolean returnGeneratedKeys, StatementCustomAction customAction, Object... params) {
         PreparedStatement statement = null;
-        try (Connection connection = getConnection()) {
+        boolean readOnly = !returnGeneratedKeys && isReadOnlyQuery(query);
+        long start = System.nanoTime();
+        long poolWait = 0;
+        long rows = -1;
+        boolean error = false;
+        try (Connection connection = readOnly ? getReadConnection() : getConnection()) {
+            poolWait = System.nanoTime() - start;
             statement = connection.prepareStatement(query, returnGeneratedKeys ? PreparedStatement.RETURN_GENERATED_KEYS : PreparedStatement.NO_GENERATED_KEYS);
+            if (statementName != null) {
+                statementRegistry.recordUsage(connection, statementName);
+            }
             if (params != null) {
                 for (int i = 0; i < params.length; i++) {
                     statement.setObject(i + 1, params[i]);
@@ -144,16 +727,73 @@ public class SQL {
             if (customAction != null) {
                 customAction.onBeforeExecute(statement);
             }
+            beginStatement(statement, statementName != null ? statementRegistry.getTimeoutMillis(statementName) : 0);
             statement.execute();
+            if (!readOnly) {
+                markWrite();
+                rows = statement.getUpdateCount();
+            }
             if (customAction != null) {
                 customAction.onAfterExecute(statement);
             }
         } catch (SQLException exception) {
+            error = true;
             exception.printStackTrace();
+            recordInterruption(query, exception);
+            SQLTransaction transaction = boundTransaction.get();
+            if (transaction != null) {
+                transaction.setRollbackOnly();
+            }
+        } finally {
+            endStatement(statement);
+            queryMetrics.record(query, params == null ? 0 : params.length, poolWait, System.nanoTime() - start, rows, error);
         }
         return statement;
     }
 
+    /**
+     * Inserts a single row and returns the inserted entity with one round trip.
+     * PostgreSQL and MariaDB return the columns of the mapper with RETURNING, H2 selects them from the final table of the insert.
+     * MySQL can only return the generated key, the entity is then created by the given generated key mapper.
+     * @param values inserted values by column
+     * @return the inserted entity or null if the insert failed
+     */
+    public <T> T insertReturning(String tableName, Map<String, Object> values, IndexedColumnMapper<T> columnMapper, GeneratedKeyMapper<T> generatedKeyMapper) {
+        List<String> columns = new ArrayList<>(values.size());
+        Object[] params = new Object[values.size()];
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            params[columns.size()] = entry.getValue();
+            columns.add(entry.getKey());
+        }
+        String insert = "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        AtomicReference<T> entity = new AtomicReference<>();
+        if (dialect == SQLDialect.MYSQL) {
+            executeQueryReturningKeys(insert, new StatementCustomAction() {
+                @Override
+                public void onAfterExecute(PreparedStatement statement) throws SQLException {
+                    ResultSet rs = statement.getGeneratedKeys();
+                    if (rs.next()) {
+                        entity.set(generatedKeyMapper.map(rs.getLong(1), values));
+                    }
+                }
+            }, params);
+            return entity.get();
+        }
+        String query = isH2Dialect()
+                ? columnMapper.getSelectStatement("FINAL TABLE (" + insert + ")")
+                : insert + " RETURNING " + columnMapper.getColumnList();
+        executeQuery(query, new StatementCustomAction() {
+            @Override
+            public void onAfterExecute(PreparedStatement statement) throws SQLException {
+                ResultSet rs = statement.getResultSet();
+                if (rs != null && rs.next()) {
+                    entity.set(columnMapper.getObjectFromResultSetEntry(rs));
+                }
+            }
+        }, params);
+        return entity.get();
+    }
+
     public List<Map<String, Object>> executeQueryReturningFields(String query, Object... params) {
         return executeQueryReturningFields(query, null, params);
     }
@@ -188,23 +828,160 @@ public class SQL {
                     customAction.onAfterExecute(statement);
                 }
                 ResultSet rs = statement.getResultSet();
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                String[] columnNames = new String[columnCount];
+                for (int i = 1; i <= columnCount; i++) {
+                    columnNames[i - 1] = metaData.getColumnName(i);
+                }
                 while (rs.next()) {
-                    Map<String, Object> row = new HashMap<>();
-                    ResultSetMetaData metaData = rs.getMetaData();
-                    int columnCount = metaData.getColumnCount();
+                    Map<String, Object> row = HashMap.newHashMap(columnCount);
                     for (int i = 1; i <= columnCount; i++) {
-                        String columnName = metaData.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        row.put(columnName, value);
+                        row.put(columnNames[i - 1], rs.getObject(i));
                     }
                     result.add(row);
                 }
+                queryMetrics.addRows(query, result.size());
             }
         }, params);
         return result;
     }
 
-    private <T> Map<Long, T> genericBatchInsert(String tableName, List<T> objects, ColumnMapper<T> columnMapper, int batchSize, boolean storeKeys) throws SQLException {
+    /**
+     * Executes the query and returns a lazily populated stream of the mapped rows.
+     * The rows are read through a forward-only cursor, so only about fetchSize rows are held in memory at once.
+     * The connection stays checked out until the stream is closed, so the stream has to be used with try-with-resources.
+     */
+    public <T> Stream<T> streamQuery(String query, ColumnMapper<T> columnMapper, int fetchSize, Object... params) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Fetch size has to be greater than zero.");
+        }
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        boolean initialAutoCommit = true;
+        int parameterCount = params == null ? 0 : params.length;
+        long start = System.nanoTime();
+        long poolWait = 0;
+        try {
+            connection = getReadConnection();
+            poolWait = System.nanoTime() - start;
+            initialAutoCommit = connection.getAutoCommit();
+            if (isPostgreSQLDialect()) {
+                // the postgres driver only reads through a cursor while auto commit is disabled
+                connection.setAutoCommit(false);
+            }
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // mysql connector/j only streams row by row if the fetch size is Integer.MIN_VALUE
+            statement.setFetchSize(dialect.equals(SQLDialect.MYSQL) ? Integer.MIN_VALUE : fetchSize);
+            if (params != null) {
+                for (int i = 0; i < params.length; i++) {
+                    statement.setObject(i + 1, params[i]);
+                }
+            }
+            beginStatement(statement, 0);
+            resultSet = statement.executeQuery();
+        } catch (SQLException exception) {
+            queryMetrics.record(query, parameterCount, poolWait, System.nanoTime() - start, -1, true);
+            recordInterruption(query, exception);
+            endStatement(statement);
+            closeStreamResources(connection, statement, resultSet, initialAutoCommit);
+            throw new RuntimeException(exception);
+        }
+        // the latency covers the execution until the first rows arrived, the rows are added once the stream is closed
+        queryMetrics.record(query, parameterCount, poolWait, System.nanoTime() - start, -1, false);
+        long[] streamedRows = new long[1];
+
+        final Connection streamConnection = connection;
+        final PreparedStatement streamStatement = statement;
+        final ResultSet streamResultSet = resultSet;
+        final ColumnMapper<T> rowMapper;
+        try {
+            rowMapper = columnMapper.bind(resultSet);
+        } catch (SQLException exception) {
+            endStatement(statement);
+            closeStreamResources(connection, statement, resultSet, initialAutoCommit);
+            throw new RuntimeException(exception);
+        }
+        final boolean restoreAutoCommit = initialAutoCommit;
+        // the stream may be closed on another thread, so the context is captured for the cleanup
+        final StatementContext streamContext = boundContext.get();
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!streamResultSet.next()) {
+                        return false;
+                    }
+                    action.accept(rowMapper.getObjectFromResultSetEntry(streamResultSet));
+                    streamedRows[0]++;
+                    return true;
+                } catch (SQLException exception) {
+                    if (isInterruption(exception)) {
+                        queryMetrics.recordInterruption(query, streamContext != null && streamContext.isCancelled());
+                    }
+                    throw new RuntimeException(exception);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> {
+                    if (streamContext != null) {
+                        streamContext.end(streamStatement);
+                    }
+                    queryMetrics.addRows(query, streamedRows[0]);
+                    closeStreamResources(streamConnection, streamStatement, streamResultSet, restoreAutoCommit);
+                });
+    }
+
+    /**
+     * Streams the rows of the query to the given consumer and releases the connection afterwards
+     * @return the amount of rows passed to the consumer
+     */
+    public <T> long forEachRow(String query, ColumnMapper<T> columnMapper, int fetchSize, Consumer<T> consumer, Object... params) {
+        long rows = 0;
+        try (Stream<T> stream = streamQuery(query, columnMapper, fetchSize, params)) {
+            Iterator<T> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private void closeStreamResources(Connection connection, PreparedStatement statement, ResultSet resultSet, boolean initialAutoCommit) {
+        try {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (!connection.getAutoCommit()) {
+                // the cursor transaction only read data
+                connection.rollback();
+                connection.setAutoCommit(initialAutoCommit);
+            }
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    private <T> Map<Long, T> genericBatchInsert(String tableName, List<T> objects, ColumnMapper<T> columnMapper, int batchSize, boolean storeKeys, List<String> conflictColumns, List<String> updateColumns) throws SQLException {
         if (objects.isEmpty()) {
             throw new IllegalArgumentException("The Objects are empty.");
         }
@@ -214,11 +991,14 @@ public class SQL {
 
         Map<String, Object> firstMapping = columnMapper.mapColumns(objects.get(0));
         List<String> columns = new ArrayList<>(firstMapping.keySet());
-        String columnNames = String.join(", ", columns);
+        // the statement differs by the amount of rows per batch, so it is recorded under its single row form
+        String template = getInsertStatement(tableName, columns, 1, conflictColumns, updateColumns);
 
         Map<Long, T> idObjectMap = new HashMap<>();
 
+        long start = System.nanoTime();
         try (Connection connection = getConnection()) {
+            long poolWait = System.nanoTime() - start;
             boolean initialAutoCommit = connection.getAutoCommit();
             connection.setAutoCommit(false);
 
@@ -227,12 +1007,10 @@ public class SQL {
                 int end = Math.min(i + batchSize, total);
                 List<T> batch = objects.subList(i, end);
 
-                String placeholders = batch.stream()
-                        .map(o -> "(" + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")")
-                        .collect(Collectors.joining(", "));
-
-                String query = "INSERT INTO " + tableName + " (" + columnNames + ") VALUES " + placeholders;
+                String query = getInsertStatement(tableName, columns, batch.size(), conflictColumns, updateColumns);
 
+                long batchStart = System.nanoTime();
+                boolean error = true;
                 try (PreparedStatement pstmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
                     int paramIndex = 1;
                     for (T obj : batch) {
@@ -242,27 +1020,251 @@ public class SQL {
                         }
                     }
 
-                    pstmt.executeUpdate();
+                    beginStatement(pstmt, 0);
+                    try {
+                        pstmt.executeUpdate();
+                    } finally {
+                        endStatement(pstmt);
+                    }
 
                     if (storeKeys) {
                         storeKeys(pstmt, batch, idObjectMap);
                     }
+                    error = false;
+                } catch (SQLException exception) {
+                    recordInterruption(template, exception);
+                    throw exception;
+                } finally {
+                    queryMetrics.record(template, batch.size() * columns.size(), i == 0 ? poolWait : 0, System.nanoTime() - batchStart, batch.size(), error);
                 }
             }
 
             connection.commit();
             connection.setAutoCommit(initialAutoCommit);
+            markWrite();
         }
 
         return idObjectMap;
     }
 
     public <T> void batchInsert(String tableName, List<T> objects, ColumnMapper<T> columnMapper, int batchSize) throws SQLException {
-        genericBatchInsert(tableName, objects, columnMapper, batchSize, false);
+        genericBatchInsert(tableName, objects, columnMapper, batchSize, false, null, null);
+    }
+
+    /**
+     * Fetches the rows of all given keys with a stable statement text.
+     * The query has to contain the key predicate as {@code column IN (:keys)}, e.g.
+     * {@code SELECT * FROM files WHERE account_id IN (:keys) AND file_name = ?}.
+     * On PostgreSQL and H2 the keys are bound as a single array parameter through {@code column = ANY(?)},
+     * on MySQL/MariaDB they are sent in chunks of fixed-size IN lists which are padded by repeating the last key.
+     */
+    public <T> List<T> queryByKeys(String query, Collection<?> keys, ColumnMapper<T> columnMapper, Object... params) {
+        List<T> result = new ArrayList<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+        Matcher matcher = KEYS_PREDICATE.matcher(query);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("The query does not contain the key predicate IN (" + KEYS_PLACEHOLDER + ").");
+        }
+        String prefix = query.substring(0, matcher.start());
+        String suffix = query.substring(matcher.end());
+        int keyIndex = (int) prefix.chars().filter(c -> c == '?').count();
+        List<Object> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        StatementCustomAction readRows = new StatementCustomAction() {
+            @Override
+            public void onAfterExecute(PreparedStatement statement) throws SQLException {
+                ResultSet rs = statement.getResultSet();
+                ColumnMapper<T> rowMapper = columnMapper.bind(rs);
+                while (rs.next()) {
+                    result.add(rowMapper.getObjectFromResultSetEntry(rs));
+                }
+            }
+        };
+
+        if (isPostgreSQLDialect() || isH2Dialect()) {
+            String arrayType = SQLUtil.getArrayType(distinctKeys.getFirst());
+            // the array can only be created with the connection of the statement, so the parameter is bound before the execution
+            executeQuery(prefix + "= ANY(?)" + suffix, new StatementCustomAction() {
+                @Override
+                public void onBeforeExecute(PreparedStatement statement) throws SQLException {
+                    statement.setArray(keyIndex + 1, statement.getConnection().createArrayOf(arrayType, distinctKeys.toArray()));
+                }
+
+                @Override
+                public void onAfterExecute(PreparedStatement statement) throws SQLException {
+                    readRows.onAfterExecute(statement);
+                }
+            }, insertParameters(params, keyIndex, 1, List.of()));
+            return result;
+        }
+
+        int maxBucketSize = KEY_BUCKET_SIZES[KEY_BUCKET_SIZES.length - 1];
+        for (int i = 0; i < distinctKeys.size(); i += maxBucketSize) {
+            List<Object> chunk = distinctKeys.subList(i, Math.min(i + maxBucketSize, distinctKeys.size()));
+            int bucketSize = getKeyBucketSize(chunk.size());
+            List<Object> paddedChunk = new ArrayList<>(chunk);
+            while (paddedChunk.size() < bucketSize) {
+                paddedChunk.add(chunk.getLast());
+            }
+            String placeholders = String.join(", ", Collections.nCopies(bucketSize, "?"));
+            executeQuery(prefix + "IN (" + placeholders + ")" + suffix, readRows, insertParameters(params, keyIndex, bucketSize, paddedChunk));
+        }
+        return result;
+    }
+
+    private static int getKeyBucketSize(int keys) {
+        for (int bucketSize : KEY_BUCKET_SIZES) {
+            if (keys <= bucketSize) {
+                return bucketSize;
+            }
+        }
+        return KEY_BUCKET_SIZES[KEY_BUCKET_SIZES.length - 1];
+    }
+
+    /**
+     * Returns the parameters with the given slots inserted at the index, slots without a value are null
+     */
+    private static Object[] insertParameters(Object[] params, int index, int slots, List<Object> values) {
+        Object[] source = params == null ? new Object[0] : params;
+        Object[] result = new Object[source.length + slots];
+        System.arraycopy(source, 0, result, 0, index);
+        for (int i = 0; i < values.size(); i++) {
+            result[index + i] = values.get(i);
+        }
+        System.arraycopy(source, index, result, index + slots, source.length - index);
+        return result;
     }
 
     public <T> Map<Long, T> batchInsertReturningKeys(String tableName, List<T> objects, ColumnMapper<T> columnMapper, int batchSize) throws SQLException {
-        return genericBatchInsert(tableName, objects, columnMapper, batchSize, true);
+        return genericBatchInsert(tableName, objects, columnMapper, batchSize, true, null, null);
+    }
+
+    /**
+     * Inserts the objects or updates the given columns of already existing rows with a single statement per batch.
+     * Uses ON CONFLICT on PostgreSQL, ON DUPLICATE KEY UPDATE on MySQL/MariaDB and MERGE on H2.
+     * If no update columns are given, conflicting rows are left untouched.
+     * Of multiple objects with the same conflict key only the last one is written.
+     */
+    public <T> void batchUpsert(String tableName, List<T> objects, ColumnMapper<T> columnMapper, List<String> conflictColumns, List<String> updateColumns, int batchSize) throws SQLException {
+        genericBatchInsert(tableName, distinctByConflictKey(objects, columnMapper, conflictColumns), columnMapper, batchSize, false, conflictColumns, updateColumns);
+    }
+
+    /**
+     * Same as {@link #batchUpsert(String, List, ColumnMapper, List, List, int)} but returns the keys of the inserted or updated rows.
+     * Only supported on PostgreSQL, because MySQL/MariaDB do not report reliable keys for updated rows.
+     * Objects which are dropped as duplicates of a later object with the same conflict key are not contained in the result.
+     */
+    public <T> Map<Long, T> batchUpsertReturningKeys(String tableName, List<T> objects, ColumnMapper<T> columnMapper, List<String> conflictColumns, List<String> updateColumns, int batchSize) throws SQLException {
+        if (!isPostgreSQLDialect()) {
+            throw new UnsupportedOperationException("Returning keys of an upsert is only supported on PostgreSQL.");
+        }
+        if (updateColumns.isEmpty()) {
+            // rows skipped by DO NOTHING are not returned, so the keys could not be assigned to the objects
+            throw new IllegalArgumentException("Update columns cannot be empty when returning keys.");
+        }
+        return genericBatchInsert(tableName, distinctByConflictKey(objects, columnMapper, conflictColumns), columnMapper, batchSize, true, conflictColumns, updateColumns);
+    }
+
+    /**
+     * Keeps only the last object per conflict key, because a single upsert statement cannot affect the same row twice.
+     * Keys containing null never conflict, so those objects are all kept.
+     */
+    private <T> List<T> distinctByConflictKey(List<T> objects, ColumnMapper<T> columnMapper, List<String> conflictColumns) {
+        if (conflictColumns == null || conflictColumns.isEmpty() || objects.size() < 2) {
+            return objects;
+        }
+        Map<Object, T> distinct = new LinkedHashMap<>();
+        for (T obj : objects) {
+            Map<String, Object> values = columnMapper.mapColumns(obj);
+            List<Object> key = new ArrayList<>(conflictColumns.size());
+            for (String column : conflictColumns) {
+                key.add(values.get(column));
+            }
+            Object distinctKey = key.contains(null) ? new Object() : key;
+            // removing first moves the object to the position of its last occurrence
+            distinct.remove(distinctKey);
+            distinct.put(distinctKey, obj);
+        }
+        return distinct.size() == objects.size() ? objects : new ArrayList<>(distinct.values());
+    }
+
+    /**
+     * Builds a multi-row insert of the given amount of rows, an upsert if conflict columns are given
+     */
+    private String getInsertStatement(String tableName, List<String> columns, int rows, List<String> conflictColumns, List<String> updateColumns) {
+        String columnNames = String.join(", ", columns);
+        String row = "(" + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+        String values = String.join(", ", Collections.nCopies(rows, row));
+        if (conflictColumns == null) {
+            return "INSERT INTO " + tableName + " (" + columnNames + ") VALUES " + values;
+        }
+        if (conflictColumns.isEmpty()) {
+            throw new IllegalArgumentException("Conflict columns cannot be empty.");
+        }
+        if (isH2Dialect()) {
+            return getMergeStatement(tableName, columns, values, conflictColumns, updateColumns);
+        }
+        return "INSERT INTO " + tableName + " (" + columnNames + ") VALUES " + values + getUpsertClause(conflictColumns, updateColumns);
+    }
+
+    private String getMergeStatement(String tableName, List<String> columns, String values, List<String> conflictColumns, List<String> updateColumns) {
+        String columnNames = String.join(", ", columns);
+        String query = "MERGE INTO " + tableName + " t USING (VALUES " + values + ") AS s (" + columnNames + ") ON "
+                + conflictColumns.stream().map(column -> "t." + column + " = s." + column).collect(Collectors.joining(" AND "));
+        if (!updateColumns.isEmpty()) {
+            query += " WHEN MATCHED THEN UPDATE SET " + updateColumns.stream()
+                    .map(column -> column + " = s." + column)
+                    .collect(Collectors.joining(", "));
+        }
+        return query + " WHEN NOT MATCHED THEN INSERT (" + columnNames + ") VALUES ("
+                + columns.stream().map(column -> "s." + column).collect(Collectors.joining(", ")) + ")";
+    }
+
+    private String getUpsertClause(List<String> conflictColumns, List<String> updateColumns) {
+        if (isPostgreSQLDialect()) {
+            String clause = " ON CONFLICT (" + String.join(", ", conflictColumns) + ")";
+            if (updateColumns.isEmpty()) {
+                return clause + " DO NOTHING";
+            }
+            return clause + " DO UPDATE SET " + updateColumns.stream()
+                    .map(column -> column + " = EXCLUDED." + column)
+                    .collect(Collectors.joining(", "));
+        }
+        // mysql and mariadb detect the conflict by any unique key of the table
+        if (updateColumns.isEmpty()) {
+            // assigning a column to itself turns the conflicting insert into a no-op
+            String column = conflictColumns.get(0);
+            return " ON DUPLICATE KEY UPDATE " + column + " = " + column;
+        }
+        return " ON DUPLICATE KEY UPDATE " + updateColumns.stream()
+                .map(column -> column + " = VALUES(" + column + ")")
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Loads the objects through the native bulk path of the database, COPY on PostgreSQL and rewritten batch inserts on MySQL/MariaDB.
+     * The columns are taken from the mapping of the first object.
+     */
+    public <T> BulkLoadResult bulkLoad(String tableName, List<T> objects, ColumnMapper<T> columnMapper, int batchSize) throws SQLException {
+        if (objects.isEmpty()) {
+            throw new IllegalArgumentException("The Objects are empty.");
+        }
+        List<String> columns = new ArrayList<>(columnMapper.mapColumns(objects.get(0)).keySet());
+        return bulkLoad(tableName, columns, objects, (obj, row) -> {
+            Map<String, Object> values = columnMapper.mapColumns(obj);
+            for (int i = 0; i < row.length; i++) {
+                row[i] = values.get(columns.get(i));
+            }
+        }, batchSize);
+    }
+
+    /**
+     * Loads the objects through the native bulk path of the database without allocating a map per object.
+     * The objects are consumed lazily, so they can be streamed from any source.
+     */
+    public <T> BulkLoadResult bulkLoad(String tableName, List<String> columns, Iterable<T> objects, ColumnWriter<T> columnWriter, int batchSize) throws SQLException {
+        return new BulkLoader(this).load(tableName, columns, objects, columnWriter, batchSize);
     }
 
     private <T> void storeKeys(PreparedStatement pstmt, List<T> batch, Map<Long, T> idObjectMap) throws SQLException {
@@ -296,7 +1298,9 @@ public class SQL {
                 .map(part -> part.split("=")[0].trim())
                 .collect(Collectors.toList());
 
+        long start = System.nanoTime();
         try (Connection connection = getConnection()) {
+            long poolWait = System.nanoTime() - start;
             boolean initialAutoCommit = connection.getAutoCommit();
             connection.setAutoCommit(false);
 
@@ -305,6 +1309,8 @@ public class SQL {
                 int end = Math.min(i + batchSize, total);
                 List<T> batch = objects.subList(i, end);
 
+                long batchStart = System.nanoTime();
+                boolean error = true;
                 try (PreparedStatement pstmt = connection.prepareStatement(query)) {
                     for (T obj : batch) {
                         Map<String, Object> values = columnMapper.mapColumns(obj);
@@ -318,12 +1324,24 @@ public class SQL {
                         }
                         pstmt.addBatch();
                     }
-                    pstmt.executeBatch();
+                    beginStatement(pstmt, 0);
+                    try {
+                        pstmt.executeBatch();
+                    } finally {
+                        endStatement(pstmt);
+                    }
+                    error = false;
+                } catch (SQLException exception) {
+                    recordInterruption(query, exception);
+                    throw exception;
+                } finally {
+                    queryMetrics.record(query, batch.size() * (columns.size() + whereColumns.size()), i == 0 ? poolWait : 0, System.nanoTime() - batchStart, batch.size(), error);
                 }
             }
 
             connection.commit();
             connection.setAutoCommit(initialAutoCommit);
+            markWrite();
         }
     }
 
@@ -359,14 +1377,100 @@ public class SQL {
         executeQuery(query);
     }
 
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public void setServerSidePrepare(boolean serverSidePrepare) {
+        this.serverSidePrepare = serverSidePrepare;
+    }
+
+    /**
+     * Sets the timeout of statements without a timeout of their own, 0 disables it
+     */
+    public void setStatementTimeoutMillis(long statementTimeoutMillis) {
+        this.statementTimeoutMillis = statementTimeoutMillis;
+    }
+
+    public long getStatementTimeoutMillis() {
+        return statementTimeoutMillis;
+    }
+
+    /**
+     * Sets the server side timeout of every statement, 0 disables it. Takes effect with the next connect.
+     */
+    public void setServerStatementTimeoutMillis(long serverStatementTimeoutMillis) {
+        this.serverStatementTimeoutMillis = serverStatementTimeoutMillis;
+    }
+
+    /**
+     * Statements which take at least the given time are logged as warning, 0 disables the slow query log
+     */
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        queryMetrics.setSlowQueryThresholdMillis(slowQueryThresholdMillis);
+    }
+
     public String getDriver() {
         return dialect.driverUrl;
     }
 
     public String getURL() {
+        return getURL(host, port);
+    }
+
+    private String getURL(String host, int port) {
+        if (isH2Dialect()) {
+            // lower case identifiers keep the column labels equal to the ones returned by the other dialects
+            String location = host.equalsIgnoreCase("mem") ? "mem:" + database + ";DB_CLOSE_DELAY=-1" : "file:" + host + "/" + database;
+            return getDriver() + location + ";DATABASE_TO_LOWER=TRUE";
+        }
         return getDriver() + host + ":" + port + "/" + database;
     }
 
+    /**
+     * Adds a read replica of the primary database, takes effect with the next connect
+     */
+    public void addReplica(String host, int port) {
+        replicaSet.add(host, port);
+    }
+
+    /**
+     * Closes and removes all read replicas
+     */
+    public void clearReplicas() {
+        replicaSet.clear();
+    }
+
+    public ReplicaSet getReplicaSet() {
+        return replicaSet;
+    }
+
+    public void setReadYourWritesWindowMillis(long readYourWritesWindowMillis) {
+        this.readYourWritesWindowMillis = readYourWritesWindowMillis;
+    }
+
+    /**
+     * Enables time-range partitioning for the table, takes effect when the table is created
+     */
+    public void setPartitionSettings(String tableName, PartitionSettings settings) {
+        partitionSettings.put(tableName, settings);
+    }
+
+    /**
+     * Returns the partition settings of the table or null if the table is not partitioned
+     */
+    public PartitionSettings getPartitionSettings(String tableName) {
+        return partitionSettings.get(tableName);
+    }
+
+    public Map<String, PartitionSettings> getPartitionSettings() {
+        return Map.copyOf(partitionSettings);
+    }
+
+    public void clearPartitionSettings() {
+        partitionSettings.clear();
+    }
+
     public boolean isMySQLDialect() {
         return dialect.equals(SQLDialect.MYSQL) || dialect.equals(SQLDialect.MARIADB);
     }
@@ -375,6 +1479,10 @@ public class SQL {
         return dialect.equals(SQLDialect.POSTGRESQL);
     }
 
+    public boolean isH2Dialect() {
+        return dialect.equals(SQLDialect.H2);
+    }
+
     public SQLDialect getDialect() {
         return dialect;
     }
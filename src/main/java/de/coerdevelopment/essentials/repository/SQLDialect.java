@@ -3,7 +3,11 @@ package de.coerdevelopment.essentials.repository;
 public enum SQLDialect {
     MYSQL("jdbc:mysql://"),
     MARIADB("jdbc:mariadb://"),
-    POSTGRESQL("jdbc:postgresql://");
+    POSTGRESQL("jdbc:postgresql://"),
+    /**
+     * Embedded in-process database, the host is either "mem" for an in-memory database or the directory of the database files
+     */
+    H2("jdbc:h2:");
 
     public String driverUrl;
 
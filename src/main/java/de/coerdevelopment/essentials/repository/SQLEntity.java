@@ -1,5 +1,7 @@
 package de.coerdevelopment.essentials.repository;
 
+import java.util.Locale;
+
 public class SQLEntity {
 
     private String name;
@@ -29,13 +31,22 @@ public class SQLEntity {
     }
 
     public String getSQL(SQLDialect dialect) {
+        return getSQL(dialect, true);
+    }
+
+    /**
+     * Returns the column definition, without the primary key if it is declared separately by the table
+     */
+    String getSQL(SQLDialect dialect, boolean inlinePrimaryKey) {
         String sql = name;
         if (isAutoIncrement && dialect.equals(SQLDialect.POSTGRESQL)) {
             sql += " BIGSERIAL";
+        } else if (isAutoIncrement && dialect.equals(SQLDialect.H2)) {
+            sql += " " + type + " GENERATED BY DEFAULT AS IDENTITY";
         } else {
-            sql += " " + type;
+            sql += " " + getType(dialect);
         }
-        if (isPrimary) {
+        if (isPrimary && inlinePrimaryKey) {
             sql += " PRIMARY KEY";
         }
         if (isNotNull) {
@@ -44,7 +55,7 @@ public class SQLEntity {
         if (isUnique) {
             sql += " UNIQUE";
         }
-        if (isAutoIncrement && !dialect.equals(SQLDialect.POSTGRESQL)) {
+        if (isAutoIncrement && isMySQLDialect(dialect)) {
             sql += " AUTO_INCREMENT";
         }
         if (isForeignKey) {
@@ -59,6 +70,25 @@ public class SQLEntity {
         return sql;
     }
 
+    /**
+     * Returns the type for the given dialect, PostgreSQL specific types are replaced by their closest equivalent on H2
+     */
+    private String getType(SQLDialect dialect) {
+        if (!dialect.equals(SQLDialect.H2)) {
+            return type;
+        }
+        return switch (type.toUpperCase(Locale.ROOT)) {
+            case "TIMESTAMPTZ" -> "TIMESTAMP WITH TIME ZONE";
+            // json values are bound as plain strings on H2, see SQLUtil#getJsonObject
+            case "JSON", "JSONB" -> "CHARACTER LARGE OBJECT";
+            default -> type;
+        };
+    }
+
+    private static boolean isMySQLDialect(SQLDialect dialect) {
+        return dialect.equals(SQLDialect.MYSQL) || dialect.equals(SQLDialect.MARIADB);
+    }
+
     // Getter and Setter
 
     public void setPrimary() {
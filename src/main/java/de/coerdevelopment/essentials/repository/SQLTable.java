@@ -1,39 +1,71 @@
 package de.coerdevelopment.essentials.repository;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SQLTable {
 
     private String name;
     private List<SQLEntity> entities;
     private List<String> checkConstraints;
+    private Map<String, String> regexChecks;
+    private String partitionColumn;
 
     public SQLTable(String name) {
         this.name = name;
         this.entities = new ArrayList<>();
         this.checkConstraints = new ArrayList<>();
+        this.regexChecks = new LinkedHashMap<>();
     }
 
     public String getCreateTableStatement(SQLDialect dialect) {
+        // H2 does not support partitioning, the table is created as a regular table
+        boolean partitioned = isPartitioned() && !dialect.equals(SQLDialect.H2);
         String query = "CREATE TABLE IF NOT EXISTS " + this.name + " (";
         for (SQLEntity entity : this.entities) {
-            query += entity.getSQL(dialect) + ",";
+            query += entity.getSQL(dialect, !partitioned) + ",";
         }
         query = query.substring(0, query.length() - 1);
+        if (partitioned) {
+            // the partition column has to be part of the primary key on postgres and mysql
+            List<String> primaryKey = new ArrayList<>(entities.stream().filter(SQLEntity::isPrimary).map(SQLEntity::getName).toList());
+            if (!primaryKey.isEmpty()) {
+                primaryKey.add(partitionColumn);
+                query += ", PRIMARY KEY (" + String.join(", ", primaryKey) + ")";
+            }
+        }
         if (!checkConstraints.isEmpty()) {
             for (String constraint : checkConstraints) {
                 query += ", CHECK (" + constraint + ")";
             }
         }
-        query += ");";
-        return query;
+        for (Map.Entry<String, String> regexCheck : regexChecks.entrySet()) {
+            query += ", CHECK (" + getRegexCondition(dialect, regexCheck.getKey(), regexCheck.getValue()) + ")";
+        }
+        query += ")";
+        if (partitioned) {
+            query += getPartitionClause(dialect);
+        }
+        return query + ";";
     }
 
     public String getCreateTableStatement() {
         return getCreateTableStatement(SQL.getSQL().getDialect());
     }
 
+    /**
+     * Returns the statement which adds the column to the existing table
+     */
+    public String getAddColumnStatement(SQLDialect dialect, SQLEntity entity) {
+        return "ALTER TABLE " + this.name + " ADD COLUMN " + entity.getSQL(dialect);
+    }
+
+    public String getName() {
+        return name;
+    }
+
     public void addEntity(SQLEntity entity) {
         this.entities.add(entity);
     }
@@ -114,6 +146,51 @@ public class SQLTable {
         checkConstraints.add(constraint);
     }
 
+    /**
+     * Partitions the table by ranges of the timestamp column, the partitions are created by the {@link PartitionManager}.
+     * Only applies when the table is created, existing tables are not converted.
+     */
+    public void setRangePartition(String column) {
+        this.partitionColumn = column;
+    }
+
+    public boolean isPartitioned() {
+        return partitionColumn != null;
+    }
+
+    public String getPartitionColumn() {
+        return partitionColumn;
+    }
+
+    private String getPartitionClause(SQLDialect dialect) {
+        return switch (dialect) {
+            case POSTGRESQL -> " PARTITION BY RANGE (" + partitionColumn + ")";
+            // rows beyond the created partitions land in the catch-all partition which is split by the partition manager
+            case MYSQL, MARIADB -> " PARTITION BY RANGE COLUMNS (" + partitionColumn + ") (PARTITION " + PartitionManager.MAX_PARTITION + " VALUES LESS THAN (MAXVALUE))";
+            case H2 -> "";
+        };
+    }
+
+    /**
+     * Adds a check constraint which matches the column case-insensitively against the regular expression in the syntax of the dialect
+     */
+    public void addRegexCheck(String column, String regex) {
+        if (regex == null || regex.isEmpty()) {
+            throw new IllegalArgumentException("Regex cannot be null or empty.");
+        }
+        regexChecks.put(column, regex);
+    }
+
+    private static String getRegexCondition(SQLDialect dialect, String column, String regex) {
+        String literal = regex.replace("'", "''");
+        return switch (dialect) {
+            case POSTGRESQL -> column + " ~* '" + literal + "'";
+            // backslashes are escape characters in mysql string literals
+            case MYSQL, MARIADB -> column + " REGEXP '" + literal.replace("\\", "\\\\") + "'";
+            case H2 -> "REGEXP_LIKE(" + column + ", '" + literal + "', 'i')";
+        };
+    }
+
     public String getCreateIndexStatement(String indexName, String... columnName) {
         if (columnName.length == 0) {
             throw new IllegalArgumentException("At least one column name must be provided for index creation.");
@@ -122,6 +199,24 @@ public class SQLTable {
         return "CREATE INDEX IF NOT EXISTS " + indexName + " ON " + this.name + " (" + columnsStatement + ");";
     }
 
+    /**
+     * Returns a statement which builds the index without blocking writes to the table,
+     * CONCURRENTLY on PostgreSQL and ALGORITHM=INPLACE LOCK=NONE on MySQL/MariaDB.
+     * PostgreSQL rejects CONCURRENTLY on partitioned tables, so their index is created with a plain statement.
+     */
+    public String getOnlineIndexStatement(SQLDialect dialect, String indexName, boolean unique, String... columnName) {
+        if (columnName.length == 0) {
+            throw new IllegalArgumentException("At least one column name must be provided for index creation.");
+        }
+        String columnsStatement = String.join(", ", columnName);
+        String index = unique ? "UNIQUE INDEX" : "INDEX";
+        return switch (dialect) {
+            case POSTGRESQL -> "CREATE " + index + (isPartitioned() ? "" : " CONCURRENTLY") + " IF NOT EXISTS " + indexName + " ON " + this.name + " (" + columnsStatement + ")";
+            case MYSQL, MARIADB -> "CREATE " + index + " " + indexName + " ON " + this.name + " (" + columnsStatement + ") ALGORITHM=INPLACE LOCK=NONE";
+            case H2 -> "CREATE " + index + " IF NOT EXISTS " + indexName + " ON " + this.name + " (" + columnsStatement + ")";
+        };
+    }
+
     public String getMultiUniqueStatement(String constraintName, String... columnName) {
         if (columnName.length == 0) {
             throw new IllegalArgumentException("At least one column name must be provided for unique index creation.");
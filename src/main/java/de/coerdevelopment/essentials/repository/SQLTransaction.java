@@ -0,0 +1,84 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+/**
+ * A connection which is bound to the current thread by {@link SQL#inTransaction(UnitOfWork)} or {@link SQL#withConnection(UnitOfWork)}.
+ * Every statement executed through {@link SQL} on this thread uses the bound connection,
+ * the connection handed out to them ignores close and, while a transaction is active, commit, rollback and auto commit changes,
+ * so the existing repository methods take part in the unit of work without any changes.
+ */
+public class SQLTransaction {
+
+    private final Connection connection;
+    private final Connection boundConnection;
+    private boolean transactional;
+    private boolean rollbackOnly;
+
+    SQLTransaction(Connection connection) {
+        this.connection = connection;
+        this.boundConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close" -> {
+                            return null;
+                        }
+                        case "isClosed" -> {
+                            return connection.isClosed();
+                        }
+                        case "commit", "rollback", "setAutoCommit" -> {
+                            // the outcome of the transaction is decided when the unit of work completes
+                            if (transactional) {
+                                return null;
+                            }
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Returns the bound connection, closing it does not return it to the pool
+     */
+    public Connection getConnection() {
+        return boundConnection;
+    }
+
+    Connection getPhysicalConnection() {
+        return connection;
+    }
+
+    /**
+     * Marks the transaction to be rolled back instead of committed when the unit of work completes
+     */
+    public void setRollbackOnly() {
+        if (transactional) {
+            rollbackOnly = true;
+        }
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    void begin() {
+        transactional = true;
+        rollbackOnly = false;
+    }
+
+    void end() {
+        transactional = false;
+        rollbackOnly = false;
+    }
+
+}
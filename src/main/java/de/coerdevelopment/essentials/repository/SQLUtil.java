@@ -3,6 +3,7 @@ package de.coerdevelopment.essentials.repository;
 import org.postgresql.util.PGobject;
 
 import java.util.List;
+import java.util.UUID;
 
 public class SQLUtil {
 
@@ -10,7 +11,9 @@ public class SQLUtil {
      * Converts a list of string to a search term which can be used in a SQL query
      * Input: {1,2,3}
      * Output: 1,2,3
+     * @deprecated inlined ids produce a new statement per list, use {@link SQL#queryByKeys(String, java.util.Collection, ColumnMapper, Object...)}
      */
+    @Deprecated
     public static String integerListToSearchTerm(List<Integer> input) {
         List<String> terms = input.stream().map(String::valueOf).toList();
         return String.join(",", terms);
@@ -29,12 +32,47 @@ public class SQLUtil {
      * Converts a list of string to a search term which can be used in a SQL query
      * Input: {1,2,3}
      * Output: 1,2,3
+     * @deprecated inlined ids produce a new statement per list, use {@link SQL#queryByKeys(String, java.util.Collection, ColumnMapper, Object...)}
      */
+    @Deprecated
     public static String longListToSearchTerm(List<Long> input) {
         List<String> terms = input.stream().map(String::valueOf).toList();
         return String.join(",", terms);
     }
 
+    /**
+     * Returns the name of the PostgreSQL array element type for the given key
+     */
+    public static String getArrayType(Object key) {
+        if (key instanceof Long) {
+            return "bigint";
+        }
+        if (key instanceof Integer) {
+            return "integer";
+        }
+        if (key instanceof Short) {
+            return "smallint";
+        }
+        if (key instanceof UUID) {
+            return "uuid";
+        }
+        if (key instanceof String) {
+            return "text";
+        }
+        throw new IllegalArgumentException("Unsupported key type: " + key.getClass().getName());
+    }
+
+    /**
+     * Returns the json value as parameter for the dialect of the current connection,
+     * a jsonb object on PostgreSQL and the plain string on all other dialects
+     */
+    public static Object getJsonObject(String json) {
+        if (SQL.getSQL().isPostgreSQLDialect()) {
+            return getJsonPgObject(json);
+        }
+        return json;
+    }
+
     public static PGobject getJsonPgObject(String json) {
         PGobject pgObject = new PGobject();
         pgObject.setType("jsonb");
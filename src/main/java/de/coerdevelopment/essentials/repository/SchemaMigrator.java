@@ -0,0 +1,207 @@
+package de.coerdevelopment.essentials.repository;
+
+import de.coerdevelopment.essentials.CoerEssentials;
+
+import java.sql.*;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the migrations of a table in the order of their versions and records them in the versions table.
+ * Tables which are already at the latest version are only checked with a single query, so no DDL runs on startup.
+ * Nodes starting at the same time are serialized by a database lock, advisory locks on PostgreSQL and GET_LOCK on MySQL/MariaDB.
+ */
+public class SchemaMigrator {
+
+    public static final String VERSIONS_TABLE = "schema_migrations";
+    private static final String LOCK_NAME = "coer_schema_migrations";
+    // key of the postgres advisory lock, derived from the lock name so it does not collide with locks of the application
+    private static final long LOCK_KEY = LOCK_NAME.hashCode();
+    private static final int LOCK_TIMEOUT_SECONDS = 300;
+
+    private final SQL sql;
+
+    public SchemaMigrator(SQL sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Applies all migrations of the scope which have not been applied yet
+     * @param scope name of the migrated unit, usually the table name
+     * @return the amount of applied migrations
+     */
+    public int migrate(String scope, List<Migration> migrations) {
+        // the database lock belongs to the session, so the migrators of this process are serialized here
+        synchronized (SchemaMigrator.class) {
+            try (Connection lockConnection = sql.getConnection()) {
+                acquireLock(lockConnection);
+                try {
+                    return migrateLocked(scope, migrations);
+                } finally {
+                    releaseLock(lockConnection);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Unable to migrate " + scope + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private int migrateLocked(String scope, List<Migration> migrations) throws SQLException {
+        ensureVersionsTable();
+        Map<Integer, String> appliedChecksums = getAppliedChecksums(scope);
+        int applied = 0;
+        int lastVersion = 0;
+        for (Migration migration : migrations) {
+            if (migration.getVersion() <= lastVersion) {
+                throw new IllegalArgumentException("Migrations of " + scope + " are not in ascending order: " + migration);
+            }
+            lastVersion = migration.getVersion();
+            String checksum = migration.getChecksum(sql.getDialect());
+            String appliedChecksum = appliedChecksums.get(migration.getVersion());
+            if (appliedChecksum != null) {
+                if (!appliedChecksum.equals(checksum)) {
+                    CoerEssentials.getInstance().logWarning("Migration " + migration + " of " + scope + " has changed since it was applied.");
+                }
+                continue;
+            }
+            apply(scope, migration, checksum);
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Waits for the migration lock of the database, H2 runs inside a single process and needs no lock
+     */
+    private void acquireLock(Connection connection) throws SQLException {
+        String query;
+        if (sql.isPostgreSQLDialect()) {
+            query = "SELECT pg_advisory_lock(?)";
+        } else if (sql.isH2Dialect()) {
+            return;
+        } else {
+            query = "SELECT GET_LOCK(?, " + LOCK_TIMEOUT_SECONDS + ")";
+        }
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            setLockParameter(statement);
+            try (ResultSet rs = statement.executeQuery()) {
+                // GET_LOCK returns 0 on a timeout and null on an error, pg_advisory_lock waits until it gets the lock
+                if (!sql.isPostgreSQLDialect() && (!rs.next() || rs.getInt(1) != 1)) {
+                    throw new SQLException("Timed out waiting for the migration lock " + LOCK_NAME + ".");
+                }
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection) {
+        String query;
+        if (sql.isPostgreSQLDialect()) {
+            query = "SELECT pg_advisory_unlock(?)";
+        } else if (sql.isH2Dialect()) {
+            return;
+        } else {
+            query = "SELECT RELEASE_LOCK(?)";
+        }
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            setLockParameter(statement);
+            statement.executeQuery().close();
+        } catch (SQLException e) {
+            CoerEssentials.getInstance().logWarning("Unable to release the migration lock: " + e.getMessage());
+            try {
+                // a pooled connection would keep holding the lock of its session
+                connection.abort(Runnable::run);
+            } catch (SQLException ignored) {}
+        }
+    }
+
+    private void setLockParameter(PreparedStatement statement) throws SQLException {
+        if (sql.isPostgreSQLDialect()) {
+            statement.setLong(1, LOCK_KEY);
+        } else {
+            statement.setString(1, LOCK_NAME);
+        }
+    }
+
+    /**
+     * Applies the migration and records its version in the same transaction,
+     * so a crash cannot leave an applied migration unrecorded on databases with transactional DDL like PostgreSQL
+     */
+    private void apply(String scope, Migration migration, String checksum) throws SQLException {
+        long start = System.currentTimeMillis();
+        // indexes built concurrently on postgres cannot run inside a transaction block
+        boolean online = migration.isOnline() && sql.isPostgreSQLDialect();
+        UnitOfWork<Long> work = getApplyWork(scope, migration, checksum, start);
+        long duration = online ? sql.withConnection(work) : sql.inTransaction(work);
+        sql.markWrite();
+        CoerEssentials.getInstance().logInfo("Applied migration " + migration + " of " + scope + " in " + duration + "ms.");
+    }
+
+    /**
+     * Returns the work executing the statements of the migration and recording its version on the same connection.
+     * Online migrations run without a transaction, their version is recorded once all statements succeeded.
+     */
+    private UnitOfWork<Long> getApplyWork(String scope, Migration migration, String checksum, long start) {
+        return transaction -> {
+            Connection connection = transaction.getConnection();
+            try (Statement statement = connection.createStatement()) {
+                for (String query : migration.getStatements(sql.getDialect())) {
+                    statement.execute(query);
+                }
+            }
+            long duration = System.currentTimeMillis() - start;
+            recordVersion(connection, scope, migration, checksum, duration);
+            return duration;
+        };
+    }
+
+    private void recordVersion(Connection connection, String scope, Migration migration, String checksum, long duration) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + VERSIONS_TABLE
+                + " (scope, version, description, checksum, applied_at, duration) VALUES (?, ?, ?, ?, ?, ?)")) {
+            statement.setString(1, scope);
+            statement.setInt(2, migration.getVersion());
+            statement.setString(3, migration.getDescription());
+            statement.setString(4, checksum);
+            statement.setObject(5, OffsetDateTime.now());
+            statement.setLong(6, duration);
+            statement.executeUpdate();
+        }
+    }
+
+    private Map<Integer, String> getAppliedChecksums(String scope) throws SQLException {
+        Map<Integer, String> checksums = new HashMap<>();
+        try (Connection connection = sql.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT version, checksum FROM " + VERSIONS_TABLE + " WHERE scope = ?")) {
+            statement.setString(1, scope);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    checksums.put(rs.getInt(1), rs.getString(2));
+                }
+            }
+        }
+        return checksums;
+    }
+
+    private void ensureVersionsTable() throws SQLException {
+        try (Connection connection = sql.getConnection()) {
+            try (ResultSet tables = connection.getMetaData().getTables(connection.getCatalog(), null, VERSIONS_TABLE, new String[]{"TABLE"})) {
+                if (tables.next()) {
+                    return;
+                }
+            }
+            SQLTable table = new SQLTable(VERSIONS_TABLE);
+            table.addString("scope", 128, false);
+            table.addInteger("version", false);
+            table.addString("description", 256, true);
+            table.addString("checksum", 64, false);
+            table.addDateTimeWithTimezone("applied_at", false);
+            table.addLong("duration", false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(table.getCreateTableStatement(sql.getDialect()));
+                statement.execute(table.getOnlineIndexStatement(sql.getDialect(), "uq_idx_schema_migrations_scope_version", true, "scope", "version"));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package de.coerdevelopment.essentials.repository;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline and cancellation handle for the statements executed inside {@link SQL#withContext(StatementContext, java.util.concurrent.Callable)}.
+ * Every statement gets the remaining time until the deadline as query timeout, statements started after the deadline or
+ * after {@link #cancel()} fail immediately. Cancelling the context also cancels the statements which are currently executing,
+ * so it can be used from another thread to abort a request.
+ * A context which is bound inside another one is never modified, its statements run in a child of both contexts instead.
+ */
+public class StatementContext {
+
+    private final long deadlineNanos;
+    private final Set<Statement> running;
+    private final List<StatementContext> parents;
+    private volatile boolean cancelled;
+
+    private StatementContext(long deadlineNanos, List<StatementContext> parents) {
+        this.deadlineNanos = deadlineNanos;
+        this.parents = parents;
+        this.running = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Creates a context whose statements have to finish within the given timeout
+     */
+    public static StatementContext withTimeout(Duration timeout) {
+        return new StatementContext(System.nanoTime() + timeout.toNanos(), List.of());
+    }
+
+    /**
+     * Creates a context without a deadline, whose statements can only be cancelled
+     */
+    public static StatementContext cancellable() {
+        return new StatementContext(Long.MAX_VALUE, List.of());
+    }
+
+    /**
+     * Cancels the running statements of this context, following statements are rejected
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : running) {
+            try {
+                statement.cancel();
+            } catch (SQLException ignored) {
+                // the statement has finished or its connection is closed in the meantime
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        if (cancelled) {
+            return true;
+        }
+        for (StatementContext parent : parents) {
+            if (parent.isCancelled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasDeadline() {
+        return getDeadlineNanos() != Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the time left until the deadline of this or an enclosing context or {@link Long#MAX_VALUE} if there is none
+     */
+    public long getRemainingMillis() {
+        long deadline = getDeadlineNanos();
+        if (deadline == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    private long getDeadlineNanos() {
+        long deadline = deadlineNanos;
+        for (StatementContext parent : parents) {
+            deadline = Math.min(deadline, parent.getDeadlineNanos());
+        }
+        return deadline;
+    }
+
+    /**
+     * Returns a child with the deadline and cancellation of this and the enclosing context
+     */
+    StatementContext nestedIn(StatementContext enclosing) {
+        return new StatementContext(Long.MAX_VALUE, List.of(this, enclosing));
+    }
+
+    /**
+     * Registers the statement as running in this and all enclosing contexts
+     * @throws SQLTimeoutException if the context is cancelled or the deadline has passed
+     */
+    void begin(Statement statement) throws SQLException {
+        if (isCancelled()) {
+            throw new SQLTimeoutException("Statement context has been cancelled.");
+        }
+        if (hasDeadline() && getRemainingMillis() <= 0) {
+            throw new SQLTimeoutException("Statement deadline exceeded before execution.");
+        }
+        register(statement);
+        if (isCancelled()) {
+            // cancel() may have run between the check above and the registration
+            statement.cancel();
+        }
+    }
+
+    void end(Statement statement) {
+        running.remove(statement);
+        for (StatementContext parent : parents) {
+            parent.end(statement);
+        }
+    }
+
+    private void register(Statement statement) {
+        running.add(statement);
+        for (StatementContext parent : parents) {
+            parent.register(statement);
+        }
+    }
+
+}
@@ -0,0 +1,11 @@
+package de.coerdevelopment.essentials.repository;
+
+/**
+ * Work which is executed with a connection bound to the current thread, see {@link SQL#inTransaction(UnitOfWork)}
+ */
+@FunctionalInterface
+public interface UnitOfWork<T> {
+
+    T execute(SQLTransaction transaction) throws Exception;
+
+}
@@ -0,0 +1,204 @@
+package de.coerdevelopment.essentials.repository;
+
+import de.coerdevelopment.essentials.CoerEssentials;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Buffers low-value writes and writes them in batches on a background thread.
+ * Repeated writes to the same key are coalesced, only the latest value is written.
+ * The buffer is flushed when the batch size is reached, after the flush interval and when the database is disconnected.
+ * If the buffer is full, the submitting thread flushes it itself, which slows down producers instead of dropping writes.
+ * A batch which fails is retried value by value, so a single invalid value does not drop the other writes of the batch.
+ */
+public class WriteBehindBuffer<K, T> {
+
+    private final String name;
+    private final BatchWriter<T> writer;
+    private final int batchSize;
+    private final int capacity;
+    private final ConcurrentHashMap<K, T> pending;
+    private final ConcurrentLinkedQueue<K> order;
+    private final AtomicInteger size;
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder submitted;
+    private final LongAdder coalesced;
+    private final LongAdder written;
+    private final LongAdder failed;
+    private final LongAdder discarded;
+    private volatile Consumer<List<T>> writtenListener;
+    private volatile boolean closed;
+
+    public WriteBehindBuffer(String name, BatchWriter<T> writer, int batchSize, int capacity, long flushIntervalMillis) {
+        if (batchSize <= 0 || capacity < batchSize) {
+            throw new IllegalArgumentException("Batch size has to be greater than zero and not greater than the capacity.");
+        }
+        this.name = name;
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.pending = new ConcurrentHashMap<>();
+        this.order = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.submitted = new LongAdder();
+        this.coalesced = new LongAdder();
+        this.written = new LongAdder();
+        this.failed = new LongAdder();
+        this.discarded = new LongAdder();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("coer-write-behind-" + name).daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers the value, replacing a pending value of the same key
+     */
+    public void submit(K key, T value) {
+        if (closed) {
+            throw new IllegalStateException("Write-behind buffer " + name + " is closed.");
+        }
+        submitted.increment();
+        if (pending.put(key, value) != null) {
+            coalesced.increment();
+            return;
+        }
+        order.add(key);
+        int pendingWrites = size.incrementAndGet();
+        if (pendingWrites >= capacity) {
+            // backpressure: the producer pays for the flush instead of growing the buffer
+            flush();
+        } else if (pendingWrites == batchSize) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * Calls the listener with the values of every batch after they have been written, e.g. to refresh caches
+     */
+    public void onWritten(Consumer<List<T>> listener) {
+        this.writtenListener = listener;
+    }
+
+    /**
+     * Drops the pending values of the matching keys, e.g. because they are superseded by a synchronous write.
+     * Waits for a running flush, so no value of the matching keys is written after this method returns.
+     * @return the amount of dropped values
+     */
+    public synchronized int discard(Predicate<K> filter) {
+        int dropped = 0;
+        for (K key : pending.keySet()) {
+            // the key stays in the order queue and is skipped by the next flush
+            if (filter.test(key) && pending.remove(key) != null) {
+                dropped++;
+            }
+        }
+        discarded.add(dropped);
+        return dropped;
+    }
+
+    /**
+     * Writes all pending values in batches of the batch size
+     */
+    public synchronized void flush() {
+        while (size.get() > 0) {
+            List<T> batch = new ArrayList<>(batchSize);
+            K key;
+            while (batch.size() < batchSize && (key = order.poll()) != null) {
+                T value = pending.remove(key);
+                size.decrementAndGet();
+                if (value != null) {
+                    batch.add(value);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                writer.write(batch);
+                written.add(batch.size());
+                notifyWritten(batch);
+            } catch (Exception e) {
+                CoerEssentials.getInstance().logWarning("Write-behind buffer " + name + " failed to write a batch of " + batch.size() + " values, retrying them one by one: " + e.getMessage());
+                writeOneByOne(batch);
+            }
+        }
+    }
+
+    private void writeOneByOne(List<T> batch) {
+        List<T> batchWritten = new ArrayList<>(batch.size());
+        for (T value : batch) {
+            try {
+                writer.write(List.of(value));
+                written.increment();
+                batchWritten.add(value);
+            } catch (Exception e) {
+                failed.increment();
+                CoerEssentials.getInstance().logError("Write-behind buffer " + name + " failed to write " + value + ": " + e.getMessage());
+            }
+        }
+        if (!batchWritten.isEmpty()) {
+            notifyWritten(batchWritten);
+        }
+    }
+
+    private void notifyWritten(List<T> batch) {
+        Consumer<List<T>> listener = writtenListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(batch);
+        } catch (Exception e) {
+            CoerEssentials.getInstance().logWarning("Write-behind buffer " + name + " failed to notify about written values: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flushes the pending values and stops the background thread
+     */
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        flush();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Returns the amount of values which replaced a pending value and therefore never caused a write
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the amount of values which were dropped by {@link #discard(Predicate)} before they were written
+     */
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+}
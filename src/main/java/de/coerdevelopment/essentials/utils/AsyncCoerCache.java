@@ -0,0 +1,152 @@
+package de.coerdevelopment.essentials.utils;
+
+import de.coerdevelopment.essentials.CoerEssentials;
+import de.coerdevelopment.essentials.module.RedisModule;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking variant of {@link CoerCache} on the async commands of the shared Redis connections.
+ * The returned stages complete on the event loop of the Redis client, so callers must not block in their callbacks
+ * and should hand off blocking work to their own executor.
+ */
+public final class AsyncCoerCache<T> {
+
+    private final CoerCache<T> cache;
+    private final RedisModule redisModule;
+
+    AsyncCoerCache(CoerCache<T> cache) {
+        this.cache = cache;
+        this.redisModule = CoerEssentials.getInstance().getRedisModule();
+    }
+
+    public CompletionStage<T> get(String key) {
+        T cached = cache.getLocal(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = cache.generation(key);
+        return commands().get(cache.namespace(key)).thenApply(value -> {
+            if (value == null) {
+                return null;
+            }
+            T result = cache.deserialize(value);
+            if (result == null) {
+                return null;
+            }
+            cache.putLocal(key, result, generation);
+            return result;
+        });
+    }
+
+    public CompletionStage<T> get(Long key) {
+        return get(String.valueOf(key));
+    }
+
+    /**
+     * Returns the cached value or stores and returns the value of the loader.
+     * The loader is asynchronous itself, so a blocking load (e.g. from the database) runs on the executor of the loader.
+     */
+    public CompletionStage<T> getOrLoad(String key, Duration ttl, Supplier<? extends CompletionStage<T>> loader) {
+        return get(key).thenCompose(value -> {
+            if (value != null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            return loader.get().thenCompose(loaded -> {
+                if (loaded == null) {
+                    return CompletableFuture.<T>completedFuture(null);
+                }
+                return put(key, loaded, ttl).thenApply(ignored -> loaded);
+            });
+        });
+    }
+
+    public CompletionStage<T> getOrLoad(String key, Supplier<? extends CompletionStage<T>> loader) {
+        return getOrLoad(key, cache.getDefaultTtl(), loader);
+    }
+
+    public CompletionStage<T> getOrLoad(Long key, Supplier<? extends CompletionStage<T>> loader) {
+        return getOrLoad(String.valueOf(key), loader);
+    }
+
+    public CompletionStage<Map<String, T>> getMany(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+        Map<String, T> result = new HashMap<>();
+        List<String> missingKeys = new ArrayList<>();
+        for (String key : keys) {
+            T cached = cache.getLocal(key);
+            if (cached != null) {
+                result.put(key, cached);
+            } else {
+                missingKeys.add(key);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        long[] generations = new long[missingKeys.size()];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = cache.generation(missingKeys.get(i));
+        }
+        String[] namespacedKeys = missingKeys.stream().map(cache::namespace).toArray(String[]::new);
+        return commands().mget(namespacedKeys).thenApply(values -> {
+            for (int i = 0; i < values.size(); i++) {
+                KeyValue<String, byte[]> kv = values.get(i);
+                if (kv != null && kv.hasValue()) {
+                    T value = cache.deserialize(kv.getValue());
+                    if (value != null) {
+                        result.put(missingKeys.get(i), value);
+                        cache.putLocal(missingKeys.get(i), value, generations[i]);
+                    }
+                }
+            }
+            return result;
+        });
+    }
+
+    public CompletionStage<Void> put(String key, T value, Duration ttl) {
+        String namespacedKey = cache.namespace(key);
+        byte[] serialized = cache.serialize(value);
+        CompletionStage<String> write = ttl == null || ttl.isZero() || ttl.isNegative()
+                ? commands().set(namespacedKey, serialized)
+                : commands().psetex(namespacedKey, ttl.toMillis(), serialized);
+        return write.thenCompose(ignored -> publishChange(key));
+    }
+
+    public CompletionStage<Void> put(String key, T value) {
+        return put(key, value, cache.getDefaultTtl());
+    }
+
+    public CompletionStage<Void> put(Long key, T value) {
+        return put(String.valueOf(key), value);
+    }
+
+    public CompletionStage<Void> invalidate(String key) {
+        return commands().del(cache.namespace(key)).thenCompose(ignored -> publishChange(key));
+    }
+
+    public CompletionStage<Void> invalidate(Long key) {
+        return invalidate(String.valueOf(key));
+    }
+
+    private CompletionStage<Void> publishChange(String key) {
+        List<String> keys = List.of(key);
+        if (!cache.evictLocal(keys)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return redisModule.publishInvalidationAsync(cache.getPrefix(), keys).thenApply(ignored -> (Void) null);
+    }
+
+    private RedisAsyncCommands<String, byte[]> commands() {
+        return redisModule.getAsyncCommands();
+    }
+
+}
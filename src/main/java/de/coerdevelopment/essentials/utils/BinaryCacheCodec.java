@@ -0,0 +1,286 @@
+package de.coerdevelopment.essentials.utils;
+
+import com.google.gson.Gson;
+
+import javax.money.CurrencyUnit;
+import javax.money.Monetary;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Compact binary codec for plain data classes like {@link de.coerdevelopment.essentials.api.Account}.
+ * All non-static and non-transient fields are written in the order of their names, without field names.
+ * Primitives, strings, enums, the java.time types, UUID, BigDecimal, Locale and CurrencyUnit are written natively,
+ * all other field types are embedded as JSON.
+ * The encoding starts with a hash of the fields, so values written by an older version of the class are decoded to null
+ * and reloaded like a cache miss. Truncated or otherwise unreadable values are treated the same way.
+ */
+public class BinaryCacheCodec<T> implements CacheCodec<T> {
+
+    private static final byte MAGIC = (byte) 0xCB;
+
+    private final Class<T> clazz;
+    private final Constructor<T> constructor;
+    private final Field[] fields;
+    private final int schemaHash;
+    private final Gson gson;
+
+    public BinaryCacheCodec(Class<T> clazz) {
+        this.clazz = clazz;
+        try {
+            this.constructor = clazz.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(clazz.getName() + " needs a constructor without parameters", e);
+        }
+        List<Field> fieldList = new ArrayList<>();
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fieldList.add(field);
+            }
+        }
+        fieldList.sort(Comparator.comparing(Field::getName).thenComparing(field -> field.getDeclaringClass().getName()));
+        this.fields = fieldList.toArray(Field[]::new);
+        this.schemaHash = getSchemaHash(fields);
+        this.gson = JsonCacheCodec.createGson();
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            out.writeInt(schemaHash);
+            for (Field field : fields) {
+                writeField(out, field, value);
+            }
+        } catch (IOException | IllegalAccessException e) {
+            throw new RuntimeException("Failed to encode " + clazz.getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (bytes.length < 5 || in.readByte() != MAGIC || in.readInt() != schemaHash) {
+                return null;
+            }
+            T value = constructor.newInstance();
+            for (Field field : fields) {
+                readField(in, field, value);
+            }
+            return value;
+        } catch (IOException | RuntimeException e) {
+            // foreign data may start with the same bytes by chance, it is reloaded like a value of another schema
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to decode " + clazz.getName(), e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    private void writeField(DataOutputStream out, Field field, Object target) throws IOException, IllegalAccessException {
+        Class<?> type = field.getType();
+        if (type == long.class) {
+            out.writeLong(field.getLong(target));
+        } else if (type == int.class) {
+            out.writeInt(field.getInt(target));
+        } else if (type == boolean.class) {
+            out.writeBoolean(field.getBoolean(target));
+        } else if (type == double.class) {
+            out.writeDouble(field.getDouble(target));
+        } else if (type == float.class) {
+            out.writeFloat(field.getFloat(target));
+        } else if (type == short.class) {
+            out.writeShort(field.getShort(target));
+        } else if (type == byte.class) {
+            out.writeByte(field.getByte(target));
+        } else if (type == char.class) {
+            out.writeChar(field.getChar(target));
+        } else {
+            Object value = field.get(target);
+            out.writeBoolean(value != null);
+            if (value != null) {
+                writeObject(out, type, value);
+            }
+        }
+    }
+
+    private void writeObject(DataOutputStream out, Class<?> type, Object value) throws IOException {
+        if (type == String.class) {
+            writeString(out, (String) value);
+        } else if (type == Long.class) {
+            out.writeLong((Long) value);
+        } else if (type == Integer.class) {
+            out.writeInt((Integer) value);
+        } else if (type == Boolean.class) {
+            out.writeBoolean((Boolean) value);
+        } else if (type == Double.class) {
+            out.writeDouble((Double) value);
+        } else if (type == Float.class) {
+            out.writeFloat((Float) value);
+        } else if (type.isEnum()) {
+            writeString(out, ((Enum<?>) value).name());
+        } else if (type == LocalDate.class) {
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (type == LocalDateTime.class) {
+            LocalDateTime dateTime = (LocalDateTime) value;
+            out.writeLong(dateTime.toLocalDate().toEpochDay());
+            out.writeLong(dateTime.toLocalTime().toNanoOfDay());
+        } else if (type == OffsetDateTime.class) {
+            OffsetDateTime dateTime = (OffsetDateTime) value;
+            out.writeLong(dateTime.toEpochSecond());
+            out.writeInt(dateTime.getNano());
+            out.writeInt(dateTime.getOffset().getTotalSeconds());
+        } else if (type == Instant.class) {
+            Instant instant = (Instant) value;
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        } else if (type == UUID.class) {
+            UUID uuid = (UUID) value;
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (type == BigDecimal.class) {
+            BigDecimal decimal = (BigDecimal) value;
+            byte[] unscaled = decimal.unscaledValue().toByteArray();
+            out.writeInt(decimal.scale());
+            out.writeInt(unscaled.length);
+            out.write(unscaled);
+        } else if (type == Locale.class) {
+            writeString(out, ((Locale) value).toLanguageTag());
+        } else if (type == CurrencyUnit.class) {
+            writeString(out, ((CurrencyUnit) value).getCurrencyCode());
+        } else {
+            writeString(out, gson.toJson(value, type));
+        }
+    }
+
+    private void readField(DataInputStream in, Field field, Object target) throws IOException, IllegalAccessException {
+        Class<?> type = field.getType();
+        if (type == long.class) {
+            field.setLong(target, in.readLong());
+        } else if (type == int.class) {
+            field.setInt(target, in.readInt());
+        } else if (type == boolean.class) {
+            field.setBoolean(target, in.readBoolean());
+        } else if (type == double.class) {
+            field.setDouble(target, in.readDouble());
+        } else if (type == float.class) {
+            field.setFloat(target, in.readFloat());
+        } else if (type == short.class) {
+            field.setShort(target, in.readShort());
+        } else if (type == byte.class) {
+            field.setByte(target, in.readByte());
+        } else if (type == char.class) {
+            field.setChar(target, in.readChar());
+        } else {
+            field.set(target, in.readBoolean() ? readObject(in, type) : null);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readObject(DataInputStream in, Class<?> type) throws IOException {
+        if (type == String.class) {
+            return readString(in);
+        } else if (type == Long.class) {
+            return in.readLong();
+        } else if (type == Integer.class) {
+            return in.readInt();
+        } else if (type == Boolean.class) {
+            return in.readBoolean();
+        } else if (type == Double.class) {
+            return in.readDouble();
+        } else if (type == Float.class) {
+            return in.readFloat();
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class<? extends Enum>) type, readString(in));
+        } else if (type == LocalDate.class) {
+            return LocalDate.ofEpochDay(in.readLong());
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.of(LocalDate.ofEpochDay(in.readLong()), LocalTime.ofNanoOfDay(in.readLong()));
+        } else if (type == OffsetDateTime.class) {
+            long epochSecond = in.readLong();
+            int nano = in.readInt();
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(in.readInt());
+            return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), offset);
+        } else if (type == Instant.class) {
+            return Instant.ofEpochSecond(in.readLong(), in.readInt());
+        } else if (type == UUID.class) {
+            return new UUID(in.readLong(), in.readLong());
+        } else if (type == BigDecimal.class) {
+            int scale = in.readInt();
+            byte[] unscaled = readBytes(in);
+            return new BigDecimal(new BigInteger(unscaled), scale);
+        } else if (type == Locale.class) {
+            return Locale.forLanguageTag(readString(in));
+        } else if (type == CurrencyUnit.class) {
+            return Monetary.getCurrency(readString(in));
+        }
+        return gson.fromJson(readString(in), type);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // writeUTF is limited to 64 KB, so the length is written as int
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length prefixed byte array, the length is checked against the remaining input before anything is allocated
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int getSchemaHash(Field[] fields) {
+        int hash = 1;
+        for (Field field : fields) {
+            hash = 31 * hash + field.getName().hashCode();
+            hash = 31 * hash + field.getType().getName().hashCode();
+        }
+        return hash;
+    }
+
+}
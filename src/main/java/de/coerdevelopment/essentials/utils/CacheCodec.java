@@ -0,0 +1,21 @@
+package de.coerdevelopment.essentials.utils;
+
+/**
+ * Converts the values of a {@link CoerCache} to the bytes stored in Redis and back
+ */
+public interface CacheCodec<T> {
+
+    byte[] encode(T value);
+
+    /**
+     * Decodes the stored bytes, returns null if the bytes were written in an incompatible format,
+     * so the value is treated like a cache miss
+     */
+    T decode(byte[] bytes);
+
+    /**
+     * Returns a short name of the format for logs and metrics
+     */
+    String getName();
+
+}
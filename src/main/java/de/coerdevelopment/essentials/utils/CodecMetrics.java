@@ -0,0 +1,79 @@
+package de.coerdevelopment.essentials.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the encoded and decoded values of a cache with their size and the time spent in the codec
+ */
+public class CodecMetrics {
+
+    private final String codecName;
+    private final LongAdder encodeCount = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder decodeCount = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    public CodecMetrics(String codecName) {
+        this.codecName = codecName;
+    }
+
+    void recordEncode(int bytes, long nanos) {
+        encodeCount.increment();
+        encodedBytes.add(bytes);
+        encodeNanos.add(nanos);
+    }
+
+    void recordDecode(int bytes, long nanos) {
+        decodeCount.increment();
+        decodedBytes.add(bytes);
+        decodeNanos.add(nanos);
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    public long getEncodeCount() {
+        return encodeCount.sum();
+    }
+
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    public long getDecodeCount() {
+        return decodeCount.sum();
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    /**
+     * Returns the average size of an encoded value in bytes
+     */
+    public double getAverageEncodedBytes() {
+        long count = encodeCount.sum();
+        return count == 0 ? 0 : (double) encodedBytes.sum() / count;
+    }
+
+    public double getAverageEncodeMicros() {
+        long count = encodeCount.sum();
+        return count == 0 ? 0 : encodeNanos.sum() / 1000.0 / count;
+    }
+
+    public double getAverageDecodeMicros() {
+        long count = decodeCount.sum();
+        return count == 0 ? 0 : decodeNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CodecMetrics[%s, encoded=%d, avgBytes=%.1f, avgEncode=%.2fus, decoded=%d, avgDecode=%.2fus]",
+                codecName, getEncodeCount(), getAverageEncodedBytes(), getAverageEncodeMicros(),
+                getDecodeCount(), getAverageDecodeMicros());
+    }
+
+}
@@ -1,73 +1,117 @@
 package de.coerdevelopment.essentials.utils;
 
-import com.fatboyindustrial.gsonjavatime.Converters;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import de.coerdevelopment.essentials.CoerEssentials;
+import de.coerdevelopment.essentials.module.RedisModule;
 import io.lettuce.core.KeyScanCursor;
 import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
 import io.lettuce.core.ScanArgs;
 import io.lettuce.core.ScanCursor;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
-import org.springframework.http.HttpStatusCode;
 
-import javax.money.CurrencyUnit;
-import javax.money.MonetaryAmount;
 import java.lang.reflect.Type;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Supplier;
 
 /**
- * A simple cache implementation using Redis as backend
+ * A simple cache implementation using Redis as backend.
+ * Values are stored as encoded by the {@link CacheCodec} of the cache, which is JSON unless another codec is given.
+ * Optionally an in-process near cache serves hot keys from local memory, see {@link #enableNearCache(int, Duration)}.
  */
 public final class CoerCache<T> {
 
-    private final RedisCommands<String, String> redis;
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final RedisCommands<String, byte[]> redis;
     private final String prefix;
     private final Duration defaultTtl;
-    private Gson gson;
-    private final Class<T> clazz;
-    private final Type type;
+    private final CacheCodec<T> codec;
+    private final CodecMetrics codecMetrics;
+    private volatile InMemoryCoerCache<String, T> nearCache;
+    // invalidation counters of the near cache, striped by key hash so they are bounded, the last stripe counts clears
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES + 1);
+    private AsyncCoerCache<T> async;
 
     public CoerCache(String prefix, Class<T> clazz) {
         this(prefix, Duration.ZERO, clazz);
     }
 
     public CoerCache(String prefix, Duration defaultTtl, Class<T> clazz) {
-        this(prefix, defaultTtl, clazz, null);
+        this(prefix, defaultTtl, (Type) clazz);
     }
 
     public CoerCache(String prefix, Duration defaultTtl, Type type) {
-        this(prefix, defaultTtl, null, type);
+        this(prefix, defaultTtl, new JsonCacheCodec<T>(type));
     }
 
     public CoerCache(String prefix, Type type) {
         this(prefix, Duration.ZERO, type);
     }
 
-    private CoerCache(String prefix, Duration defaultTtl, Class<T> clazz, Type type) {
-        if (CoerEssentials.getInstance().getRedisModule() == null) {
+    /**
+     * Creates a cache whose values are encoded by the given codec.
+     * Values written with another codec are not readable, so the prefix should be new or invalidated when switching.
+     * Values reaching the compression threshold of the redis module are compressed, see {@link CompressingCacheCodec}.
+     */
+    public CoerCache(String prefix, Duration defaultTtl, CacheCodec<T> codec) {
+        RedisModule redisModule = CoerEssentials.getInstance().getRedisModule();
+        if (redisModule == null) {
             throw new IllegalStateException("Redis module is not enabled");
         }
-        this.redis = CoerEssentials.getInstance().getRedisModule().getSharedCommands();
+        this.redis = redisModule.getSharedBinaryCommands();
         this.prefix = prefix;
         this.defaultTtl = defaultTtl;
-        this.gson = Converters.registerAll(new GsonBuilder()
-                .registerTypeAdapter(HttpStatusCode.class, new HttpStatusCodeAdapter())
-                .registerTypeAdapter(CurrencyUnit.class, new CurrencyUnitAdapter())
-                .registerTypeAdapter(MonetaryAmount.class, new MonetaryAmountAdapter())
-        ).create();
-        this.clazz = clazz;
-        this.type = type;
+        int compressionThreshold = redisModule.getCompressionThresholdBytes();
+        this.codec = compressionThreshold > 0 ? new CompressingCacheCodec<>(codec, compressionThreshold) : codec;
+        this.codecMetrics = new CodecMetrics(this.codec.getName());
+    }
+
+    /**
+     * Keeps up to maxSize entries in local memory for the given ttl in front of Redis.
+     * Changes through this cache are published to the other nodes, which evict their local copies.
+     * The ttl should be short, because it bounds how long a node may serve a value whose invalidation it has missed.
+     * Values are shared between the callers of a node, so they must not be modified without putting them again.
+     */
+    public synchronized void enableNearCache(int maxSize, Duration ttl) {
+        if (nearCache != null) {
+            return;
+        }
+        this.nearCache = new InMemoryCoerCache<>(ttl, maxSize);
+        CoerEssentials.getInstance().getRedisModule().subscribeInvalidations(prefix, this::evictLocally);
+    }
+
+    /**
+     * Returns the non-blocking variant of this cache, which shares the serialization and the near cache with it
+     */
+    public synchronized AsyncCoerCache<T> async() {
+        if (async == null) {
+            async = new AsyncCoerCache<>(this);
+        }
+        return async;
     }
 
     public T get(String key) {
-        String value = redis.get(namespace(key));
+        T cached = getLocal(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = generation(key);
+        byte[] value = redis.get(namespace(key));
         if (value == null) {
             return null;
         }
-        return deserialize(value);
+        T result = deserialize(value);
+        if (result == null) {
+            return null;
+        }
+        putLocal(key, result, generation);
+        return result;
     }
 
     public T get(Long key) {
@@ -111,11 +155,11 @@ public final class CoerCache<T> {
                 for (String k : page.getKeys()) {
                     batch.add(k);
                     if (batch.size() >= 1000) {
-                        List<KeyValue<String, String>> values = redis.mget(batch.toArray(String[]::new));
-                        for (KeyValue<String, String> kv : values) {
+                        List<KeyValue<String, byte[]>> values = redis.mget(batch.toArray(String[]::new));
+                        for (KeyValue<String, byte[]> kv : values) {
                             if (kv != null && kv.hasValue()) {
                                 try {
-                                    result.add(deserialize(kv.getValue()));
+                                    addDecoded(result, kv.getValue());
                                 } catch (Exception e) {
                                     throw new RuntimeException("Failed to deserialize cache value", e);
                                 }
@@ -127,11 +171,11 @@ public final class CoerCache<T> {
             } while (!"0".equals(cursor));
 
             if (!batch.isEmpty()) {
-                List<KeyValue<String, String>> values = redis.mget(batch.toArray(String[]::new));
-                for (KeyValue<String, String> kv : values) {
+                List<KeyValue<String, byte[]>> values = redis.mget(batch.toArray(String[]::new));
+                for (KeyValue<String, byte[]> kv : values) {
                     if (kv != null && kv.hasValue()) {
                         try {
-                            result.add(deserialize(kv.getValue()));
+                            addDecoded(result, kv.getValue());
                         } catch (Exception e) {
                             throw new RuntimeException("Failed to deserialize cache value", e);
                         }
@@ -145,12 +189,8 @@ public final class CoerCache<T> {
     }
 
     public void put(String key, T value, Duration ttl) {
-        String jsonValue = serialize(value);
-        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
-            redis.set(namespace(key), jsonValue);
-        } else {
-            redis.psetex(namespace(key), ttl.toMillis(), jsonValue);
-        }
+        write(key, value, ttl);
+        publishChange(List.of(key));
     }
 
     public void put(Long key, T value, Duration ttl) {
@@ -185,17 +225,39 @@ public final class CoerCache<T> {
         if (keys.isEmpty()) {
             return Map.of();
         }
-        List<String> namespacedKeys = keys.stream().map(this::namespace).toList();
-        List<KeyValue<String, String>> values = redis.mget(namespacedKeys.toArray(String[]::new));
         Map<String, T> result = new HashMap<>();
         List<String> originalKeys = new ArrayList<>(keys);
+        InMemoryCoerCache<String, T> local = nearCache;
+        if (local != null) {
+            originalKeys.removeIf(key -> {
+                T cached = local.get(key);
+                if (cached == null) {
+                    return false;
+                }
+                result.put(key, cached);
+                return true;
+            });
+            if (originalKeys.isEmpty()) {
+                return result;
+            }
+        }
+        long[] keyGenerations = new long[originalKeys.size()];
+        for (int i = 0; i < keyGenerations.length; i++) {
+            keyGenerations[i] = generation(originalKeys.get(i));
+        }
+        List<String> namespacedKeys = originalKeys.stream().map(this::namespace).toList();
+        List<KeyValue<String, byte[]>> values = redis.mget(namespacedKeys.toArray(String[]::new));
         for (int i = 0; i < values.size(); i++) {
-            KeyValue<String, String> kv = values.get(i);
+            KeyValue<String, byte[]> kv = values.get(i);
             if (kv != null && kv.hasValue()) {
                 String originalKey = originalKeys.get(i);
                 try {
                     T value = deserialize(kv.getValue());
+                    if (value == null) {
+                        continue;
+                    }
                     result.put(originalKey, value);
+                    putLocal(originalKey, value, keyGenerations[i]);
                 } catch (Exception e) {
                     throw new RuntimeException("Failed to deserialize cache value", e);
                 }
@@ -222,10 +284,58 @@ public final class CoerCache<T> {
         putManyByLong(values, this.defaultTtl);
     }
 
+    /**
+     * Writes the values pipelined on the bulk connection of the redis module, chunk by chunk.
+     * Values without ttl are written with one MSET per chunk, otherwise the PSETEX commands of a chunk are flushed together.
+     */
     public void putMany(Map<String, T> values, Duration ttl) {
-        for (Map.Entry<String, T> entry : values.entrySet()) {
-            put(entry.getKey(), entry.getValue(), ttl);
+        if (values.isEmpty()) {
+            return;
         }
+        RedisModule redisModule = CoerEssentials.getInstance().getRedisModule();
+        StatefulRedisConnection<String, byte[]> connection = redisModule.getBulkConnection();
+        int chunkSize = Math.max(1, redisModule.getPipelineChunkSize());
+        boolean expires = ttl != null && !ttl.isZero() && !ttl.isNegative();
+        synchronized (connection) {
+            RedisAsyncCommands<String, byte[]> async = connection.async();
+            connection.setAutoFlushCommands(false);
+            try {
+                List<RedisFuture<?>> futures = new ArrayList<>(chunkSize);
+                Map<String, byte[]> chunk = new HashMap<>();
+                for (Map.Entry<String, T> entry : values.entrySet()) {
+                    String key = namespace(entry.getKey());
+                    byte[] encoded = serialize(entry.getValue());
+                    if (expires) {
+                        futures.add(async.psetex(key, ttl.toMillis(), encoded));
+                    } else {
+                        chunk.put(key, encoded);
+                    }
+                    if (futures.size() >= chunkSize || chunk.size() >= chunkSize) {
+                        flushChunk(connection, async, futures, chunk);
+                    }
+                }
+                flushChunk(connection, async, futures, chunk);
+            } finally {
+                connection.setAutoFlushCommands(true);
+            }
+        }
+        publishChange(values.keySet());
+    }
+
+    private void flushChunk(StatefulRedisConnection<String, byte[]> connection, RedisAsyncCommands<String, byte[]> async,
+                            List<RedisFuture<?>> futures, Map<String, byte[]> chunk) {
+        if (!chunk.isEmpty()) {
+            futures.add(async.mset(chunk));
+        }
+        if (futures.isEmpty()) {
+            return;
+        }
+        connection.flushCommands();
+        if (!LettuceFutures.awaitAll(connection.getTimeout(), futures.toArray(RedisFuture[]::new))) {
+            throw new RedisCommandTimeoutException("Pipelined write of " + prefix + " timed out.");
+        }
+        futures.clear();
+        chunk.clear();
     }
 
     public void putManyByLong(Map<Long, T> values, Duration ttl) {
@@ -238,6 +348,7 @@ public final class CoerCache<T> {
 
     public void invalidate(String key) {
         redis.del(namespace(key));
+        publishChange(List.of(key));
     }
 
     public void invalidate(Long key) {
@@ -268,9 +379,122 @@ public final class CoerCache<T> {
                 unlinkBatch(batch);
             }
         } catch (Exception ignored) {}
+        InMemoryCoerCache<String, T> local = nearCache;
+        if (local != null) {
+            clearLocal(local);
+            // no keys invalidate the whole cache
+            CoerEssentials.getInstance().getRedisModule().publishInvalidation(prefix, List.of());
+        }
+    }
+
+    private void write(String key, T value, Duration ttl) {
+        byte[] encoded = serialize(value);
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            redis.set(namespace(key), encoded);
+        } else {
+            redis.psetex(namespace(key), ttl.toMillis(), encoded);
+        }
+    }
+
+    /**
+     * Evicts the changed keys from the own near cache and announces them to the other nodes
+     */
+    private void publishChange(Collection<String> keys) {
+        if (evictLocal(keys)) {
+            CoerEssentials.getInstance().getRedisModule().publishInvalidation(prefix, keys);
+        }
+    }
+
+    /**
+     * Returns the value of the near cache or null if it is not cached locally
+     */
+    T getLocal(String key) {
+        InMemoryCoerCache<String, T> local = nearCache;
+        return local != null ? local.get(key) : null;
+    }
+
+    /**
+     * Returns the invalidation counter of the key, which has to be read before the value is read from Redis
+     */
+    long generation(String key) {
+        return generations.get(stripe(key)) + generations.get(GENERATION_STRIPES);
+    }
+
+    /**
+     * Stores the value read from Redis in the near cache unless the key has been invalidated since the given generation.
+     * A value which was stored while the key was invalidated is removed again, so a stale read never outlives the invalidation.
+     */
+    void putLocal(String key, T value, long generation) {
+        InMemoryCoerCache<String, T> local = nearCache;
+        if (local == null || value == null || generation(key) != generation) {
+            return;
+        }
+        local.put(key, value);
+        if (generation(key) != generation) {
+            local.remove(key);
+        }
     }
 
-    private String namespace(String key) {
+    private void removeLocal(InMemoryCoerCache<String, T> local, String key) {
+        // the counter is increased first, so a concurrent putLocal either sees it or is removed afterwards
+        generations.incrementAndGet(stripe(key));
+        local.remove(key);
+    }
+
+    private void clearLocal(InMemoryCoerCache<String, T> local) {
+        generations.incrementAndGet(GENERATION_STRIPES);
+        local.clear();
+    }
+
+    private static int stripe(String key) {
+        return Math.floorMod(key.hashCode(), GENERATION_STRIPES);
+    }
+
+    /**
+     * Evicts the keys from the near cache
+     * @return true if the change has to be published to the other nodes
+     */
+    boolean evictLocal(Collection<String> keys) {
+        InMemoryCoerCache<String, T> local = nearCache;
+        if (local == null || keys.isEmpty()) {
+            return false;
+        }
+        for (String key : keys) {
+            removeLocal(local, key);
+        }
+        return true;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the size and latency of the encoded and decoded values of this cache
+     */
+    public CodecMetrics getCodecMetrics() {
+        return codecMetrics;
+    }
+
+    Duration getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    private void evictLocally(List<String> keys) {
+        InMemoryCoerCache<String, T> local = nearCache;
+        if (local == null) {
+            return;
+        }
+        if (keys.isEmpty()) {
+            clearLocal(local);
+            return;
+        }
+        for (String key : keys) {
+            removeLocal(local, key);
+        }
+    }
+
+    String namespace(String key) {
         return prefix + ":" + key;
     }
 
@@ -282,19 +506,28 @@ public final class CoerCache<T> {
         }
     }
 
-    private String serialize(T value) {
-        if (clazz == String.class && value != null) {
-            return (String) value; // Strings roh speichern
-        }
-        return (clazz != null) ? gson.toJson(value, clazz) : gson.toJson(value, type);
+    byte[] serialize(T value) {
+        long start = System.nanoTime();
+        byte[] encoded = codec.encode(value);
+        codecMetrics.recordEncode(encoded.length, System.nanoTime() - start);
+        return encoded;
+    }
+
+    /**
+     * Decodes the stored value, returns null if it was written in a format the codec cannot read
+     */
+    T deserialize(byte[] raw) {
+        long start = System.nanoTime();
+        T value = codec.decode(raw);
+        codecMetrics.recordDecode(raw.length, System.nanoTime() - start);
+        return value;
     }
 
-    private T deserialize(String raw) {
-        if (clazz == String.class) {
-            @SuppressWarnings("unchecked") T t = (T) raw;
-            return t;
+    private void addDecoded(List<T> result, byte[] raw) {
+        T value = deserialize(raw);
+        if (value != null) {
+            result.add(value);
         }
-        return (clazz != null) ? gson.fromJson(raw, clazz) : gson.fromJson(raw, type);
     }
 
 }
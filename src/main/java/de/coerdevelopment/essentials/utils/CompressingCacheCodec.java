@@ -0,0 +1,109 @@
+package de.coerdevelopment.essentials.utils;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates the values of another codec whose encoding reaches the threshold.
+ * Compressed values start with a header byte followed by the uncompressed length, all other values are stored unchanged,
+ * so values written before compression was enabled stay readable.
+ * The header byte never starts UTF-8 text or a {@link BinaryCacheCodec} value.
+ * Truncated or corrupt compressed values are decoded to null and reloaded like a cache miss.
+ */
+public class CompressingCacheCodec<T> implements CacheCodec<T> {
+
+    private static final byte DEFLATE = (byte) 0xFF;
+    private static final int HEADER_LENGTH = 5;
+    // deflate cannot compress better than about 1032:1, a larger uncompressed length in the header is corrupt
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private final CacheCodec<T> codec;
+    private final int thresholdBytes;
+
+    public CompressingCacheCodec(CacheCodec<T> codec, int thresholdBytes) {
+        this.codec = codec;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        byte[] encoded = codec.encode(value);
+        if (encoded.length < thresholdBytes) {
+            return encoded;
+        }
+        byte[] compressed = deflate(encoded);
+        // incompressible values are cheaper to store as they are
+        return compressed.length < encoded.length ? compressed : encoded;
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        if (bytes.length > 0 && bytes[0] == DEFLATE) {
+            byte[] inflated = inflate(bytes);
+            return inflated != null ? codec.decode(inflated) : null;
+        }
+        return codec.decode(bytes);
+    }
+
+    @Override
+    public String getName() {
+        return codec.getName() + "+deflate";
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            // stops as soon as the output is not smaller than the input
+            ByteBuffer output = ByteBuffer.allocate(bytes.length);
+            output.put(DEFLATE).putInt(bytes.length);
+            while (!deflater.finished() && output.hasRemaining()) {
+                deflater.deflate(output);
+            }
+            if (!deflater.finished()) {
+                return bytes;
+            }
+            byte[] compressed = new byte[output.position()];
+            output.flip().get(compressed);
+            return compressed;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the uncompressed value or null if the compressed value is truncated or corrupt
+     */
+    private static byte[] inflate(byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH) {
+            return null;
+        }
+        // the length is checked before it is allocated, so a corrupt header cannot exhaust the heap
+        int uncompressedLength = ByteBuffer.wrap(bytes, 1, 4).getInt();
+        if (uncompressedLength < 0 || uncompressedLength > (long) (bytes.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO) {
+            return null;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            byte[] output = new byte[uncompressedLength];
+            int length = 0;
+            while (length < output.length && !inflater.finished()) {
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            return length == output.length ? output : null;
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
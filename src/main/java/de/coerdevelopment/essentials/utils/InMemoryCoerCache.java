@@ -1,6 +1,7 @@
 package de.coerdevelopment.essentials.utils;
 
 import java.time.Duration;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -12,9 +13,9 @@ public class InMemoryCoerCache<K, V> {
         final V value;
         final long expireAt;
 
-        CacheEntry(V value, long ttlSeconds) {
+        CacheEntry(V value, long ttlMillis) {
             this.value = value;
-            this.expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+            this.expireAt = System.currentTimeMillis() + ttlMillis;
         }
 
         boolean isExpired() {
@@ -22,24 +23,48 @@ public class InMemoryCoerCache<K, V> {
         }
     }
 
+    /**
+     * Amount of entries inspected to find the entry which is evicted once the cache is full
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
     private final long CLEANUP_INTERVAL_SECONDS = 60;
     private final Duration defaultTtl;
+    private final int maxSize;
     private final ConcurrentHashMap<K, CacheEntry<V>> store = new ConcurrentHashMap<>();
 
     public InMemoryCoerCache(Duration defaultTtl) {
+        this(defaultTtl, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a cache which holds at most maxSize entries, if it is full the entry closest to its expiration
+     * out of a small sample is evicted
+     */
+    public InMemoryCoerCache(Duration defaultTtl, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size has to be greater than zero.");
+        }
         this.defaultTtl = defaultTtl;
-        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(
+        this.maxSize = maxSize;
+        Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().factory()).scheduleAtFixedRate(
                 this::cleanup,
                 CLEANUP_INTERVAL_SECONDS, CLEANUP_INTERVAL_SECONDS, TimeUnit.SECONDS
         );
     }
 
     public void put(K key, V value) {
-        put(key, value, this.defaultTtl.getSeconds());
+        put(key, value, this.defaultTtl);
     }
 
     public void put(K key, V value, long ttlSeconds) {
-        store.put(key, new CacheEntry<>(value, ttlSeconds));
+        put(key, value, Duration.ofSeconds(ttlSeconds));
+    }
+
+    public void put(K key, V value, Duration ttl) {
+        if (store.put(key, new CacheEntry<>(value, ttl.toMillis())) == null && store.size() > maxSize) {
+            evict();
+        }
     }
 
     public V get(K key) {
@@ -55,6 +80,14 @@ public class InMemoryCoerCache<K, V> {
         store.remove(key);
     }
 
+    public void clear() {
+        store.clear();
+    }
+
+    public int size() {
+        return store.size();
+    }
+
     public void cleanup() {
         for (Map.Entry<K, CacheEntry<V>> entry : store.entrySet()) {
             if (entry.getValue().isExpired()) {
@@ -62,4 +95,23 @@ public class InMemoryCoerCache<K, V> {
             }
         }
     }
+
+    private void evict() {
+        while (store.size() > maxSize) {
+            K candidate = null;
+            long candidateExpireAt = Long.MAX_VALUE;
+            Iterator<Map.Entry<K, CacheEntry<V>>> iterator = store.entrySet().iterator();
+            for (int i = 0; i < EVICTION_SAMPLES && iterator.hasNext(); i++) {
+                Map.Entry<K, CacheEntry<V>> entry = iterator.next();
+                if (entry.getValue().expireAt < candidateExpireAt) {
+                    candidate = entry.getKey();
+                    candidateExpireAt = entry.getValue().expireAt;
+                }
+            }
+            if (candidate == null) {
+                return;
+            }
+            store.remove(candidate);
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package de.coerdevelopment.essentials.utils;
+
+import com.fatboyindustrial.gsonjavatime.Converters;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.springframework.http.HttpStatusCode;
+
+import javax.money.CurrencyUnit;
+import javax.money.MonetaryAmount;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Default codec which stores values as UTF-8 encoded JSON, strings are stored as they are
+ */
+public class JsonCacheCodec<T> implements CacheCodec<T> {
+
+    private final Gson gson;
+    private final Type type;
+    private final boolean raw;
+
+    public JsonCacheCodec(Type type) {
+        this.gson = createGson();
+        this.type = type;
+        this.raw = type == String.class;
+    }
+
+    /**
+     * Creates the Gson instance with the adapters of all types used in cached values
+     */
+    public static Gson createGson() {
+        return Converters.registerAll(new GsonBuilder()
+                .registerTypeAdapter(HttpStatusCode.class, new HttpStatusCodeAdapter())
+                .registerTypeAdapter(CurrencyUnit.class, new CurrencyUnitAdapter())
+                .registerTypeAdapter(MonetaryAmount.class, new MonetaryAmountAdapter())
+        ).create();
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        String json = raw && value != null ? (String) value : gson.toJson(value, type);
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T decode(byte[] bytes) {
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        if (raw) {
+            return (T) json;
+        }
+        return gson.fromJson(json, type);
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+}
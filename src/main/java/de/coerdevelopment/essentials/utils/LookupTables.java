@@ -0,0 +1,31 @@
+package de.coerdevelopment.essentials.utils;
+
+import javax.money.CurrencyUnit;
+import javax.money.Monetary;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches values which are expensive to resolve but only have a small set of possible inputs,
+ * e.g. the locale and currency columns which are read for every mapped account.
+ */
+public class LookupTables {
+
+    private static final ConcurrentHashMap<String, Locale> locales = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CurrencyUnit> currencies = new ConcurrentHashMap<>();
+
+    public static Locale getLocale(String languageTag) {
+        if (languageTag == null) {
+            return null;
+        }
+        return locales.computeIfAbsent(languageTag, Locale::forLanguageTag);
+    }
+
+    public static CurrencyUnit getCurrency(String currencyCode) {
+        if (currencyCode == null) {
+            return null;
+        }
+        return currencies.computeIfAbsent(currencyCode, code -> Monetary.getCurrency(code));
+    }
+
+}
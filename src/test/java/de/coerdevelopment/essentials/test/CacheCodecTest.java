@@ -0,0 +1,131 @@
+package de.coerdevelopment.essentials.test;
+
+import de.coerdevelopment.essentials.api.Account;
+import de.coerdevelopment.essentials.utils.BinaryCacheCodec;
+import de.coerdevelopment.essentials.utils.CompressingCacheCodec;
+import de.coerdevelopment.essentials.utils.JsonCacheCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.money.Monetary;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class CacheCodecTest {
+
+    private static Account createAccount() {
+        return new Account(42L, "test@coerdevelopment.de", OffsetDateTime.of(2024, 5, 1, 12, 30, 0, 0, ZoneOffset.ofHours(2)),
+                LocalDate.of(1995, 3, 14), "Max", "Mustermann", "max", null, "DE", "Berlin", Locale.GERMANY,
+                Monetary.getCurrency("EUR"), null, null, null, null, "https://coerdevelopment.de", "Über mich", null,
+                false, false, true);
+    }
+
+    private static void assertSameAccount(Account expected, Account actual) {
+        Assertions.assertNotNull(actual, "Account was not decoded");
+        Assertions.assertEquals(expected.accountId, actual.accountId, "Account id does not match");
+        Assertions.assertEquals(expected.email, actual.email, "Email does not match");
+        Assertions.assertEquals(expected.createdAt, actual.createdAt, "Creation time does not match");
+        Assertions.assertEquals(expected.birthday, actual.birthday, "Birthday does not match");
+        Assertions.assertEquals(expected.age, actual.age, "Age does not match");
+        Assertions.assertEquals(expected.username, actual.username, "Username does not match");
+        Assertions.assertNull(actual.phoneNumber, "Missing phone number was decoded");
+        Assertions.assertEquals(expected.locale, actual.locale, "Locale does not match");
+        Assertions.assertEquals(expected.preferredCurrency, actual.preferredCurrency, "Currency does not match");
+        Assertions.assertEquals(expected.websiteUrl, actual.websiteUrl, "Website does not match");
+        Assertions.assertEquals(expected.aboutMe, actual.aboutMe, "About me does not match");
+        Assertions.assertEquals(expected.mailVerified, actual.mailVerified, "Mail verification does not match");
+    }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        Account account = createAccount();
+        BinaryCacheCodec<Account> codec = new BinaryCacheCodec<>(Account.class);
+        assertSameAccount(account, codec.decode(codec.encode(account)));
+    }
+
+    @Test
+    public void testJsonRoundTrip() {
+        Account account = createAccount();
+        JsonCacheCodec<Account> codec = new JsonCacheCodec<>(Account.class);
+        assertSameAccount(account, codec.decode(codec.encode(account)));
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJson() {
+        Account account = createAccount();
+        int binarySize = new BinaryCacheCodec<>(Account.class).encode(account).length;
+        int jsonSize = new JsonCacheCodec<Account>(Account.class).encode(account).length;
+        Assertions.assertTrue(binarySize < jsonSize, "Binary encoding has " + binarySize + " bytes, json " + jsonSize + " bytes");
+    }
+
+    @Test
+    public void testIncompatibleValuesDecodeToNull() {
+        BinaryCacheCodec<Account> codec = new BinaryCacheCodec<>(Account.class);
+        byte[] encoded = codec.encode(createAccount());
+
+        byte[] otherSchema = Arrays.copyOf(encoded, encoded.length);
+        otherSchema[1] ^= 1;
+        Assertions.assertNull(codec.decode(otherSchema), "Value of another schema was decoded");
+
+        byte[] json = new JsonCacheCodec<Account>(Account.class).encode(createAccount());
+        Assertions.assertNull(codec.decode(json), "Json value was decoded as binary");
+    }
+
+    @Test
+    public void testCorruptValuesDecodeToNull() {
+        BinaryCacheCodec<Account> codec = new BinaryCacheCodec<>(Account.class);
+        byte[] encoded = codec.encode(createAccount());
+
+        Assertions.assertNull(codec.decode(Arrays.copyOf(encoded, encoded.length / 2)), "Truncated value was decoded");
+
+        // the header of a valid value followed by foreign bytes, which read as huge or negative lengths
+        byte[] foreign = Arrays.copyOf(encoded, encoded.length);
+        Arrays.fill(foreign, 5, foreign.length, (byte) 0xFF);
+        Assertions.assertNull(codec.decode(foreign), "Foreign value with a valid header was decoded");
+    }
+
+    @Test
+    public void testLargeValuesAreCompressed() {
+        Account account = createAccount();
+        account.aboutMe = "Ich entwickle Software. ".repeat(200);
+        JsonCacheCodec<Account> json = new JsonCacheCodec<>(Account.class);
+        CompressingCacheCodec<Account> codec = new CompressingCacheCodec<>(json, 1024);
+
+        byte[] compressed = codec.encode(account);
+        Assertions.assertTrue(compressed.length < json.encode(account).length / 4, "Value was not compressed");
+        Assertions.assertEquals(account.aboutMe, codec.decode(compressed).aboutMe, "Compressed value does not match");
+    }
+
+    @Test
+    public void testCorruptCompressedValuesDecodeToNull() {
+        Account account = createAccount();
+        account.aboutMe = "Ich entwickle Software. ".repeat(200);
+        CompressingCacheCodec<Account> codec = new CompressingCacheCodec<>(new JsonCacheCodec<>(Account.class), 1024);
+        byte[] compressed = codec.encode(account);
+
+        Assertions.assertNull(codec.decode(Arrays.copyOf(compressed, compressed.length / 2)), "Truncated value was decoded");
+
+        byte[] negativeLength = Arrays.copyOf(compressed, compressed.length);
+        negativeLength[1] = (byte) 0x80;
+        Assertions.assertNull(codec.decode(negativeLength), "Value with a negative length was decoded");
+
+        byte[] hugeLength = Arrays.copyOf(compressed, compressed.length);
+        hugeLength[1] = (byte) 0x7F;
+        Assertions.assertNull(codec.decode(hugeLength), "Value with a huge length was decoded");
+    }
+
+    @Test
+    public void testSmallAndUncompressedValuesStayReadable() {
+        JsonCacheCodec<Account> json = new JsonCacheCodec<>(Account.class);
+        CompressingCacheCodec<Account> codec = new CompressingCacheCodec<>(json, 1024);
+        Account account = createAccount();
+
+        byte[] plain = json.encode(account);
+        Assertions.assertArrayEquals(plain, codec.encode(account), "Small value was compressed");
+        assertSameAccount(account, codec.decode(plain));
+    }
+
+}
@@ -0,0 +1,193 @@
+package de.coerdevelopment.essentials.test;
+
+import de.coerdevelopment.essentials.api.Account;
+import de.coerdevelopment.essentials.api.AccountLogin;
+import de.coerdevelopment.essentials.repository.*;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class H2DialectTest {
+
+    private static SQL sql;
+
+    @BeforeAll
+    public static void connect() {
+        sql = SQL.newSQL("mem", "sa", "", "coer_test", 0, "h2", 1, 4);
+        Assertions.assertTrue(sql.initSQL(), "Unable to start the embedded database");
+    }
+
+    @AfterAll
+    public static void disconnect() throws SQLException {
+        sql.disconnect();
+    }
+
+    @Test
+    public void testAccountRepository() {
+        AccountRepository repository = new AccountRepository("h2_accounts");
+        repository.createTable();
+        long accountId = repository.insertAccount("max@example.com", "hash", "salt", Locale.GERMANY, "max", "Max", "Mustermann");
+        Assertions.assertTrue(accountId > 0, "No key generated for the inserted account");
+        Account account = repository.getAccount(accountId);
+        Assertions.assertNotNull(account, "Unable to read the inserted account");
+        Assertions.assertEquals("max@example.com", account.email, "Email does not match");
+        Assertions.assertTrue(repository.doesUsernameExists("max"), "Username not found");
+
+        Account created = repository.createAccount("erika@example.com", "hash", "salt", Locale.GERMANY, "erika", "Erika", null);
+        Assertions.assertNotNull(created, "Insert did not return the account");
+        Assertions.assertTrue(created.accountId > accountId, "Generated key was not returned");
+        Assertions.assertEquals("erika", created.username, "Returned account does not match");
+        Assertions.assertFalse(created.isLocked, "Column default was not returned");
+
+        long invalidAccountId = repository.insertAccount("no-mail", "hash", "salt", Locale.GERMANY, null, null, null);
+        Assertions.assertEquals(-1, invalidAccountId, "Email check constraint was not applied");
+    }
+
+    @Test
+    public void testBulkLoadAndRead() {
+        AccountLoginRepository repository = AccountLoginRepository.getInstance();
+        repository.createTable();
+        OffsetDateTime now = OffsetDateTime.now();
+        BulkLoadResult result = repository.insertLogins(List.of(
+                new AccountLogin("login@example.com", now, true, null),
+                new AccountLogin("login@example.com", now.minusMinutes(5), false, "Wrong password"),
+                new AccountLogin("other@example.com", now, true, null)));
+        Assertions.assertEquals(3, result.rows, "Not all logins were loaded");
+        Assertions.assertEquals(2, repository.getAccountLogins("login@example.com").size(), "Logins do not match");
+    }
+
+    @Test
+    public void testBatchUpsert() throws SQLException {
+        SQLTable table = new SQLTable("h2_counters");
+        table.addUniqueString("name", 32, false);
+        table.addInteger("counter", false);
+        sql.executeQuery(table.getCreateTableStatement());
+
+        ColumnMapper<Object[]> columnMapper = new ColumnMapper<>() {
+            @Override
+            public Map<String, Object> mapColumns(Object[] obj) {
+                return Map.of("name", obj[0], "counter", obj[1]);
+            }
+
+            @Override
+            public Object[] getObjectFromResultSetEntry(ResultSet resultSet) throws SQLException {
+                return new Object[]{resultSet.getString("name"), resultSet.getInt("counter")};
+            }
+        };
+        sql.batchInsert("h2_counters", List.of(new Object[]{"a", 1}, new Object[]{"b", 1}), columnMapper, 10);
+        sql.batchUpsert("h2_counters", List.of(new Object[]{"a", 2}, new Object[]{"c", 2}), columnMapper, List.of("name"), List.of("counter"), 10);
+
+        List<Object[]> counters = sql.queryByKeys("SELECT * FROM h2_counters WHERE name IN (" + SQL.KEYS_PLACEHOLDER + ") ORDER BY name",
+                List.of("a", "b", "c"), columnMapper);
+        Assertions.assertEquals(3, counters.size(), "Upsert did not insert the new row");
+        Assertions.assertEquals(2, counters.get(0)[1], "Upsert did not update the existing row");
+        Assertions.assertEquals(1, counters.get(1)[1], "Upsert changed an unrelated row");
+
+        sql.batchUpsert("h2_counters", List.of(new Object[]{"b", 3}, new Object[]{"b", 4}), columnMapper, List.of("name"), List.of("counter"), 10);
+        List<Object[]> duplicates = sql.queryByKeys("SELECT * FROM h2_counters WHERE name IN (" + SQL.KEYS_PLACEHOLDER + ")",
+                List.of("b"), columnMapper);
+        Assertions.assertEquals(4, duplicates.getFirst()[1], "The last row of a duplicated key was not written");
+    }
+
+    @Test
+    public void testWriteBehindProperties() {
+        AccountRepository repository = new AccountRepository("h2_write_behind_accounts");
+        repository.createTable();
+        long first = repository.insertAccount("first@example.com", "hash", "salt", Locale.GERMANY, "first", "First", null);
+        long second = repository.insertAccount("second@example.com", "hash", "salt", Locale.GERMANY, "second", "Second", null);
+        long third = repository.insertAccount("third@example.com", "hash", "salt", Locale.GERMANY, "third", "Third", null);
+        repository.enableWriteBehind(4, 4, 60000);
+        WriteBehindBuffer<String, AccountRepository.PropertyUpdate> buffer = repository.getPropertyWrites();
+        List<Long> writtenAccounts = new ArrayList<>();
+        buffer.onWritten(updates -> updates.forEach(update -> writtenAccounts.add(update.accountId)));
+
+        repository.setPropertyDeferred(first, "first_name", "Ignored");
+        repository.setPropertyDeferred(first, "first_name", "Coalesced");
+        Assertions.assertEquals(1, buffer.getPending(), "Writes to the same property were not coalesced");
+        Assertions.assertEquals(1, buffer.getCoalesced(), "Coalesced write was not counted");
+        Assertions.assertEquals("First", repository.getAccount(first).firstName, "Buffered write was written before the flush");
+
+        Account account = repository.getAccount(second);
+        repository.setPropertyDeferred(second, "first_name", "Deferred");
+        account.firstName = "Updated";
+        Assertions.assertTrue(repository.updateAccount(second, account), "Unable to update the account");
+        Assertions.assertEquals(1, buffer.getDiscarded(), "Pending write of the updated account was not discarded");
+        buffer.flush();
+        Assertions.assertEquals("Updated", repository.getAccount(second).firstName, "Flush overwrote the newer update");
+        Assertions.assertEquals("Coalesced", repository.getAccount(first).firstName, "Flush did not write the latest value");
+        Assertions.assertEquals(List.of(first), writtenAccounts, "Listener was not called with the written values");
+
+        repository.setPropertyDeferred(first, "last_name", "One");
+        repository.setPropertyDeferred(second, "last_name", "Two");
+        repository.setPropertyDeferred(third, "first_name", "x".repeat(100));
+        Assertions.assertEquals(3, buffer.getPending(), "Writes were flushed before the buffer was full");
+        repository.setPropertyDeferred(third, "last_name", "Three");
+        Assertions.assertEquals(0, buffer.getPending(), "Full buffer was not flushed by the producer");
+        Assertions.assertEquals(1, buffer.getFailed(), "Invalid value was not retried on its own");
+        Assertions.assertEquals("One", repository.getAccount(first).lastName, "Invalid value dropped the other writes of the batch");
+        Assertions.assertEquals("Three", repository.getAccount(third).lastName, "Invalid value dropped the other writes of the batch");
+        Assertions.assertEquals("Third", repository.getAccount(third).firstName, "Invalid value was written");
+        buffer.close();
+    }
+
+    @Test
+    public void testStatementContext() throws Exception {
+        String deadlineQuery = "SELECT 1 AS deadline_probe";
+        sql.withTimeout(Duration.ofMillis(1), () -> {
+            Thread.sleep(20);
+            return sql.executeQuery(deadlineQuery);
+        });
+        QueryMetrics.QueryStatistics deadline = sql.getQueryMetrics().getStatistics(deadlineQuery);
+        Assertions.assertEquals(1, deadline.getTimeouts(), "Statement after the deadline was not recorded as timeout");
+        Assertions.assertEquals(1, deadline.getErrors(), "Statement after the deadline was executed");
+
+        String cancelQuery = "SELECT 1 AS cancel_probe";
+        StatementContext cancelled = StatementContext.cancellable();
+        cancelled.cancel();
+        sql.withContext(cancelled, () -> sql.executeQuery(cancelQuery));
+        QueryMetrics.QueryStatistics cancellation = sql.getQueryMetrics().getStatistics(cancelQuery);
+        Assertions.assertEquals(1, cancellation.getCancellations(), "Statement of a cancelled context was not recorded as cancellation");
+        Assertions.assertEquals(0, cancellation.getTimeouts(), "Cancellation was recorded as timeout");
+
+        String nestedQuery = "SELECT 1 AS nested_probe";
+        StatementContext shared = StatementContext.withTimeout(Duration.ofMinutes(1));
+        sql.withContext(cancelled, () -> sql.withContext(shared, () -> sql.executeQuery(nestedQuery)));
+        Assertions.assertFalse(shared.isCancelled(), "Nested context was linked to the enclosing context");
+        sql.withContext(shared, () -> sql.executeQuery(nestedQuery));
+        QueryMetrics.QueryStatistics nested = sql.getQueryMetrics().getStatistics(nestedQuery);
+        Assertions.assertEquals(1, nested.getCancellations(), "Cancellation of the enclosing context was not applied");
+        Assertions.assertEquals(1, nested.getErrors(), "Reused context kept the enclosing context");
+
+        String asyncQuery = "SELECT 1 AS async_probe";
+        sql.withContext(cancelled, () -> sql.async().executeQuery(asyncQuery)).get();
+        QueryMetrics.QueryStatistics async = sql.getQueryMetrics().getStatistics(asyncQuery);
+        Assertions.assertEquals(1, async.getCancellations(), "Context of the caller was not applied to the async statement");
+    }
+
+    @Test
+    public void testAsyncFollowsPoolSize() throws Exception {
+        AsyncSQL async = sql.async();
+        int initialSize = async.getMaxConcurrency();
+        try {
+            sql.setMaximumPoolSize(2);
+            Assertions.assertEquals(2, async.getMaxConcurrency(), "Async concurrency did not follow the smaller pool");
+            Assertions.assertEquals(2, async.getAvailablePermits(), "Permits were not reduced");
+            sql.setMaximumPoolSize(6);
+            Assertions.assertEquals(6, async.getAvailablePermits(), "Permits were not increased");
+            Assertions.assertEquals(1, async.supply(() -> 1).get(), "Async task did not run after the resize");
+        } finally {
+            sql.setMaximumPoolSize(initialSize);
+        }
+    }
+
+}